@@ -0,0 +1,80 @@
+package genetic.tetris;
+
+import tetris.*;
+import tetris.logic.BestMoveFinder;
+import tetris.logic.EvaluationParameter;
+import tetris.logic.MultiWeightMoveFinder;
+import tetris.logic.ParameterWeights;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Screens mutated parameter sets before spending matches on them: collects positions from a self-played game and
+ * reports, in a single search per position, how often each candidate picks the same placement as the best set.
+ * {@link GeneticTetris} screens its children the same way.
+ */
+public class CandidateScreening {
+
+    public static final int CANDIDATES_CNT = 20;
+    public static final int MAX_ROUNDS = 200;
+
+    public static void main(String[] args) {
+        Random rnd = new Random();
+        List<GameState> positions = playGame(rnd);
+        System.out.println("positions = " + positions.size());
+
+        List<ParameterWeights> candidates = new ArrayList<>();
+        candidates.add(BestMoveFinder.BEST_PARAMETERS);
+        EvaluationParameter[] parameters = EvaluationParameter.values();
+        for (int i = 0; i < CANDIDATES_CNT; i++) {
+            ParameterWeights child = new ParameterWeights(BestMoveFinder.BEST_PARAMETERS);
+            EvaluationParameter parameter = parameters[rnd.nextInt(parameters.length)];
+            child.put(parameter, child.get(parameter) + rnd.nextGaussian());
+            candidates.add(child);
+        }
+
+        MultiWeightMoveFinder finder = new MultiWeightMoveFinder(candidates, BestMoveFinder.DEFAULT_ONE_MORE_LEVEL_NODES_CNT);
+        long start = System.currentTimeMillis();
+        List<TetriminoWithPosition[]> placements = finder.choosePlacements(positions);
+        System.out.println("time = " + (System.currentTimeMillis() - start));
+        double[][] agreement = finder.agreement(placements);
+        for (int i = 1; i < candidates.size(); i++) {
+            System.out.println("agreement = " + agreement[0][i] + " " + candidates.get(i));
+        }
+    }
+
+    static List<GameState> playGame(Random rnd) {
+        List<GameState> positions = new ArrayList<>();
+        BestMoveFinder finder = BestMoveFinder.getBest();
+        Board board = new Board(Board.STANDARD_HEIGHT, Board.STANDARD_WIDTH);
+        TetriminoType cur = randomTetrimino(rnd);
+        TetriminoType next = randomTetrimino(rnd);
+        int combo = 0;
+        int skipCnt = 0;
+        for (int round = 1; round <= MAX_ROUNDS; round++) {
+            TetriminoWithPosition fallingTetrimino = board.newFallingTetrimino(cur);
+            if (board.collides(fallingTetrimino)) {
+                break;
+            }
+            GameState gameState = new GameState(board, fallingTetrimino, next, combo, round, skipCnt, Collections.singletonList(0));
+            positions.add(gameState);
+            DropResult dropResult = board.moveAndDrop(fallingTetrimino, finder.findBestMoves(gameState), combo, round);
+            board = dropResult.getBoard();
+            if (dropResult.isLost() || board.getMaxColumnHeight() == board.getHeight()) {
+                break;
+            }
+            combo = dropResult.getCombo();
+            skipCnt += dropResult.getSkipAdded();
+            cur = next;
+            next = randomTetrimino(rnd);
+        }
+        return positions;
+    }
+
+    private static TetriminoType randomTetrimino(Random rnd) {
+        return TetriminoType.ALL[rnd.nextInt(TetriminoType.ALL.length)];
+    }
+}
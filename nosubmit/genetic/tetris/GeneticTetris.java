@@ -2,8 +2,10 @@ package genetic.tetris;
 
 import local.MatchMaker;
 import local.MatchResult;
+import tetris.GameState;
 import tetris.logic.BestMoveFinder;
 import tetris.logic.EvaluationParameter;
+import tetris.logic.MultiWeightMoveFinder;
 import tetris.logic.ParameterWeights;
 
 import java.util.*;
@@ -15,6 +17,8 @@ import static tetris.logic.EvaluationParameter.*;
 public class GeneticTetris {
 
     public static final int GAMES_CNT = 3;
+    public static final int SCREENING_POSITIONS_CNT = 50;
+    public static final int SCREENED_CHILDREN_CNT = 4;
 
     private static EvaluationParameter[] parametersToMutate = EvaluationParameter.values();
 
@@ -32,6 +36,10 @@ public class GeneticTetris {
             //species.add(BestMoveFinder.BEST_PARAMETERS);
         }
 
+        List<GameState> screeningPositions = new ArrayList<>(CandidateScreening.playGame(rnd));
+        Collections.shuffle(screeningPositions, rnd);
+        screeningPositions = screeningPositions.subList(0, Math.min(SCREENING_POSITIONS_CNT, screeningPositions.size()));
+
         new Thread(new ResultsLogger(currentBestRef)).start();
         int round = 0;
         while (true) {
@@ -50,10 +58,10 @@ public class GeneticTetris {
 
             MatchResult matchResult = getMatchSeriesResult(matchMaker, first, second);
             if (matchResult == FIRST_WON) {
-                species.set(b, new CreatureAndWinCnt(child(first, rnd, parametersToMutate)));
+                species.set(b, new CreatureAndWinCnt(screenedChild(first, screeningPositions, rnd)));
                 firstPair.winCnt++;
             } else if (matchResult == SECOND_WON) {
-                species.set(a, new CreatureAndWinCnt(child(second, rnd, parametersToMutate)));
+                species.set(a, new CreatureAndWinCnt(screenedChild(second, screeningPositions, rnd)));
                 secondPair.winCnt++;
             }
             Collections.sort(species, Comparator.comparing(CreatureAndWinCnt::getWinCnt));
@@ -96,6 +104,27 @@ public class GeneticTetris {
         return parameterWeights;
     }
 
+    /**
+     * A mutation that chooses the same placements as its parent on every position plays the same games, a series
+     * against it would be wasted. Searches a few mutations at once with {@link MultiWeightMoveFinder} and returns the
+     * first that differs from the parent somewhere, the first one if none does.
+     */
+    private static ParameterWeights screenedChild(ParameterWeights parameterWeights, List<GameState> positions, Random rnd) {
+        List<ParameterWeights> candidates = new ArrayList<>();
+        candidates.add(parameterWeights);
+        for (int i = 0; i < SCREENED_CHILDREN_CNT; i++) {
+            candidates.add(child(parameterWeights, rnd, parametersToMutate));
+        }
+        MultiWeightMoveFinder finder = new MultiWeightMoveFinder(candidates, BestMoveFinder.DEFAULT_ONE_MORE_LEVEL_NODES_CNT);
+        double[][] agreement = finder.agreement(finder.choosePlacements(positions));
+        for (int i = 1; i < candidates.size(); i++) {
+            if (agreement[0][i] < 1 - 0.5 / positions.size()) { // the shares are summed, so not exactly 1
+                return candidates.get(i);
+            }
+        }
+        return candidates.get(1);
+    }
+
     private static ParameterWeights child(ParameterWeights parameterWeights, Random rnd, EvaluationParameter[] parametersToMutate) {
         ParameterWeights child = new ParameterWeights(parameterWeights);
         EvaluationParameter parameter = parametersToMutate[rnd.nextInt(parametersToMutate.length)];
@@ -0,0 +1,36 @@
+package genetic.tetris;
+
+import tetris.GameState;
+import tetris.Move;
+import tetris.logic.BestMoveFinder;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Compares move choices of the double and the quantized evaluator on positions from self-played games.
+ */
+public class QuantizationCheck {
+
+    public static final int GAMES_CNT = 3;
+
+    public static void main(String[] args) {
+        Random rnd = new Random();
+        BestMoveFinder exact = BestMoveFinder.getBest();
+        BestMoveFinder quantized = BestMoveFinder.getBest().useQuantizedEvaluation();
+        int positionsCnt = 0;
+        int sameCnt = 0;
+        for (int game = 0; game < GAMES_CNT; game++) {
+            for (GameState gameState : CandidateScreening.playGame(rnd)) {
+                List<Move> expected = exact.findBestMoves(gameState);
+                List<Move> actual = quantized.findBestMoves(gameState);
+                positionsCnt++;
+                if (Objects.equals(expected, actual)) {
+                    sameCnt++;
+                }
+            }
+        }
+        System.out.println("positions = " + positionsCnt + ", same moves = " + sameCnt + " (" + (100.0 * sameCnt / positionsCnt) + "%)");
+    }
+}
@@ -0,0 +1,77 @@
+package local;
+
+import tetris.Board;
+import tetris.DropResult;
+import tetris.GameState;
+import tetris.Move;
+import tetris.TetriminoType;
+import tetris.TetriminoWithPosition;
+import tetris.logic.BestMoveFinder;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays a game without garbage with the default finder and reports the bytes the search allocates per move and
+ * per node, measured by the thread allocation counter. The first moves only warm up. Fails when a node allocates
+ * more than {@link #MAX_BYTES_PER_NODE}: a node only fills its arena, what is left is the moves of the root and
+ * the odd T-spin cell.
+ */
+public class AllocationBench {
+    private static final int WARMUP_MOVES = 50;
+    private static final double MAX_BYTES_PER_NODE = 16;
+
+    public static void main(String[] args) {
+        int movesCnt = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        BestMoveFinder finder = BestMoveFinder.getBest();
+        Random rnd = new Random(1);
+        Board board = new Board(Board.STANDARD_HEIGHT, Board.STANDARD_WIDTH);
+        int combo = 0;
+        int skipCnt = 0;
+        TetriminoType cur = TetriminoType.ALL[rnd.nextInt(TetriminoType.ALL.length)];
+        TetriminoType next = TetriminoType.ALL[rnd.nextInt(TetriminoType.ALL.length)];
+        long bytes = 0;
+        long nodes = 0;
+        long nanos = 0;
+        int measuredCnt = 0;
+        for (int round = 1; round <= movesCnt; round++) {
+            TetriminoWithPosition fallingTetrimino = board.newFallingTetrimino(cur);
+            if (board.collides(fallingTetrimino)) {
+                break;
+            }
+            GameState gameState = new GameState(board, fallingTetrimino, next, combo, round, skipCnt, Collections.singletonList(0));
+            long startBytes = threads.getThreadAllocatedBytes(threadId);
+            long startNodes = finder.getNodeCnt();
+            long start = System.nanoTime();
+            List<Move> moves = finder.findBestMoves(gameState);
+            if (round > WARMUP_MOVES) {
+                nanos += System.nanoTime() - start;
+                bytes += threads.getThreadAllocatedBytes(threadId) - startBytes;
+                nodes += finder.getNodeCnt() - startNodes;
+                measuredCnt++;
+            }
+            DropResult dropResult = board.moveAndDrop(fallingTetrimino, moves, combo, round);
+            board = dropResult.getBoard();
+            combo = dropResult.getCombo();
+            skipCnt += dropResult.getSkipAdded();
+            cur = next;
+            next = TetriminoType.ALL[rnd.nextInt(TetriminoType.ALL.length)];
+            if (board.getMaxColumnHeight() == board.getHeight() || dropResult.isLost()) {
+                break;
+            }
+        }
+        System.out.println("moves = " + measuredCnt);
+        System.out.println("KB per move = " + bytes / 1024.0 / Math.max(1, measuredCnt));
+        double bytesPerNode = bytes / (double) Math.max(1, nodes);
+        System.out.println("bytes per node = " + bytesPerNode);
+        System.out.println("ms per move = " + nanos / 1e6 / Math.max(1, measuredCnt));
+        if (bytesPerNode > MAX_BYTES_PER_NODE) {
+            throw new IllegalStateException("a node allocates " + bytesPerNode + " bytes, more than " + MAX_BYTES_PER_NODE);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package local;
+
+import tetris.logic.BeamSearchMoveFinder;
+import tetris.logic.BestMoveFinder;
+import tetris.logic.MctsMoveFinder;
+import tetris.logic.MoveFinder;
+
+import java.util.Arrays;
+
+/**
+ * Builds finders for local matches from a short spec, so experiments don't need code changes: a finder name
+ * followed by comma separated options, e.g. "best,width=10,extension=30000" or "beam,widths=10/5/3,samples=2".
+ * <ul>
+ * <li>best: width, extension, pruning, prefilter=keepFraction/margin, adaptive=gap/nodeBudget, cache, tt
+ * (megabytes), parallel, quantized</li>
+ * <li>beam: widths, samples</li>
+ * <li>mcts: iterations, threads</li>
+ * </ul>
+ * All finders use {@link BestMoveFinder#BEST_PARAMETERS}.
+ */
+public class FinderFactory {
+    private FinderFactory() {
+    }
+
+    public static MoveFinder create(String spec) {
+        String[] parts = spec.split(",");
+        switch (parts[0]) {
+            case "best":
+                return createBest(parts);
+            case "beam":
+                return createBeam(parts);
+            case "mcts":
+                return createMcts(parts);
+            default:
+                throw new IllegalArgumentException("unknown finder: " + spec);
+        }
+    }
+
+    private static BestMoveFinder createBest(String[] parts) {
+        int width = BestMoveFinder.DEFAULT_ONE_MORE_LEVEL_NODES_CNT;
+        for (int i = 1; i < parts.length; i++) {
+            if (getName(parts[i]).equals("width")) {
+                width = Integer.parseInt(getValue(parts[i]));
+            }
+        }
+        BestMoveFinder finder = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, width);
+        for (int i = 1; i < parts.length; i++) {
+            String value = getValue(parts[i]);
+            switch (getName(parts[i])) {
+                case "width":
+                    break;
+                case "extension":
+                    finder.useSelectiveExtension(Long.parseLong(value));
+                    break;
+                case "pruning":
+                    finder.useChancePruning();
+                    break;
+                case "prefilter":
+                    finder.usePrefilter(Double.parseDouble(getPart(value, 0)), Double.parseDouble(getPart(value, 1)));
+                    break;
+                case "adaptive":
+                    finder.useAdaptiveWidth(Double.parseDouble(getPart(value, 0)), Long.parseLong(getPart(value, 1)));
+                    break;
+                case "cache":
+                    finder.useEvaluationCache(Integer.parseInt(value));
+                    break;
+                case "tt":
+                    finder.useTranspositionTable(Integer.parseInt(value));
+                    break;
+                case "parallel":
+                    finder.useParallelism(Integer.parseInt(value));
+                    break;
+                case "quantized":
+                    finder.useQuantizedEvaluation();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option of best: " + parts[i]);
+            }
+        }
+        return finder;
+    }
+
+    private static BeamSearchMoveFinder createBeam(String[] parts) {
+        int[] widths = {10, 5, 3, 2};
+        int samplesCnt = 1;
+        for (int i = 1; i < parts.length; i++) {
+            String value = getValue(parts[i]);
+            switch (getName(parts[i])) {
+                case "widths":
+                    widths = Arrays.stream(value.split("/")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "samples":
+                    samplesCnt = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option of beam: " + parts[i]);
+            }
+        }
+        return new BeamSearchMoveFinder(BestMoveFinder.BEST_PARAMETERS, widths, samplesCnt);
+    }
+
+    private static MctsMoveFinder createMcts(String[] parts) {
+        long iterationsCnt = 1000;
+        int threadsCnt = 1;
+        for (int i = 1; i < parts.length; i++) {
+            String value = getValue(parts[i]);
+            switch (getName(parts[i])) {
+                case "iterations":
+                    iterationsCnt = Long.parseLong(value);
+                    break;
+                case "threads":
+                    threadsCnt = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option of mcts: " + parts[i]);
+            }
+        }
+        return new MctsMoveFinder(BestMoveFinder.BEST_PARAMETERS, iterationsCnt).useThreads(threadsCnt);
+    }
+
+    private static String getName(String option) {
+        int eq = option.indexOf('=');
+        return eq < 0 ? option : option.substring(0, eq);
+    }
+
+    private static String getValue(String option) {
+        int eq = option.indexOf('=');
+        return eq < 0 ? null : option.substring(eq + 1);
+    }
+
+    private static String getPart(String value, int index) {
+        String[] parts = value.split("/");
+        if (index >= parts.length) {
+            throw new IllegalArgumentException("expected two values separated by '/': " + value);
+        }
+        return parts[index];
+    }
+}
@@ -1,7 +1,7 @@
 package local;
 
 import tetris.*;
-import tetris.logic.BestMoveFinder;
+import tetris.logic.MoveFinder;
 
 import java.util.List;
 
@@ -14,12 +14,13 @@ class FullGameState {
     int round = 1;
     int skipCnt;
     int garbageAcceptedSum;
+    long searchNanos;
 
     FullGameState(Board board) {
         this.board = board;
     }
 
-    public void makeMove(TetriminoType curTetrimino, TetriminoType nextTetrimino, List<Integer> possibleGarbage, BestMoveFinder player) {
+    public void makeMove(TetriminoType curTetrimino, TetriminoType nextTetrimino, List<Integer> possibleGarbage, MoveFinder player) {
         if (lost) {
             throw new RuntimeException();
         }
@@ -28,7 +29,9 @@ class FullGameState {
             lost = true;
             return;
         }
+        long start = System.nanoTime();
         List<Move> moves = player.findBestMoves(new GameState(board, fallingTetrimino, nextTetrimino, combo, round, skipCnt, possibleGarbage));
+        searchNanos += System.nanoTime() - start;
         DropResult dropResult = board.moveAndDrop(fallingTetrimino, moves, combo, round);
         board = dropResult.getBoard();
         combo = dropResult.getCombo();
@@ -4,6 +4,7 @@ import tetris.Board;
 import tetris.Holes;
 import tetris.TetriminoType;
 import tetris.logic.BestMoveFinder;
+import tetris.logic.MoveFinder;
 import tetris.logic.PossibleGarbageCalculator;
 
 import java.util.List;
@@ -12,37 +13,70 @@ import java.util.Random;
 import static local.MatchResult.*;
 
 public class MatchMaker {
-
+    private long firstSearchNanos;
+    private long secondSearchNanos;
+    private int movesCnt;
+
+    /**
+     * Plays matches between two finders until stopped.
+     *
+     * @param args specs of the first and the second finder, see {@link FinderFactory}
+     */
     public static void main(String[] args) {
-        BestMoveFinder first = new BestMoveFinder(
-                BestMoveFinder.BEST_PARAMETERS
-                ,
-                5
-        );
-        BestMoveFinder second = new BestMoveFinder(
-                BestMoveFinder.BEST_PARAMETERS
-                ,
-                10
-        );
+        MoveFinder first = FinderFactory.create(args.length > 0 ? args[0] : "best,extension=30000");
+        MoveFinder second = FinderFactory.create(args.length > 1 ? args[1] : "best");
+        MatchMaker matchMaker = new MatchMaker();
         int matchCnt = 0;
         int[] resultToCnt = new int[3];
         while (true) {
-            MatchResult matchResult = new MatchMaker().playMatch(first, second);
+            MatchResult matchResult = matchMaker.playMatch(first, second);
             matchCnt++;
             resultToCnt[matchResult.ordinal()]++;
             System.out.println("matchCnt = " + matchCnt);
             for (int i = 0; i < 3; i++) {
                 System.out.println(MatchResult.values()[i] + " " + (resultToCnt[i] / (double) matchCnt));
             }
+            System.out.println("ms per move: " + matchMaker.getFirstMillisPerMove() + " " + matchMaker.getSecondMillisPerMove());
+            System.out.println("nodes per move: " + matchMaker.getNodesPerMove(first) + " " + matchMaker.getNodesPerMove(second));
             System.out.println();
         }
     }
 
-    public MatchResult playMatch(BestMoveFinder firstPlayer, BestMoveFinder secondPlayer) {
-        Random rnd = new Random();
-
+    public MatchResult playMatch(MoveFinder firstPlayer, MoveFinder secondPlayer) {
         FullGameState firstGameState = new FullGameState(new Board(Board.STANDARD_HEIGHT, Board.STANDARD_WIDTH));
         FullGameState secondGameState = new FullGameState(new Board(Board.STANDARD_HEIGHT, Board.STANDARD_WIDTH));
+        MatchResult matchResult = playMatch(firstPlayer, secondPlayer, firstGameState, secondGameState);
+        firstSearchNanos += firstGameState.searchNanos;
+        secondSearchNanos += secondGameState.searchNanos;
+        movesCnt += firstGameState.round - 1;
+        return matchResult;
+    }
+
+    /**
+     * @return average search time of the first player over the matches played so far
+     */
+    public double getFirstMillisPerMove() {
+        return firstSearchNanos / 1e6 / Math.max(1, movesCnt);
+    }
+
+    public double getSecondMillisPerMove() {
+        return secondSearchNanos / 1e6 / Math.max(1, movesCnt);
+    }
+
+    /**
+     * @return average number of nodes a {@link BestMoveFinder} searched per move over the matches played so far,
+     * NaN for other finders
+     */
+    public double getNodesPerMove(MoveFinder player) {
+        if (!(player instanceof BestMoveFinder)) {
+            return Double.NaN;
+        }
+        return ((BestMoveFinder) player).getNodeCnt() / (double) Math.max(1, movesCnt);
+    }
+
+    private MatchResult playMatch(MoveFinder firstPlayer, MoveFinder secondPlayer, FullGameState firstGameState, FullGameState secondGameState) {
+        Random rnd = new Random();
+
         TetriminoType curTetrimino = getRandomTetrimino(rnd);
         TetriminoType nextTetrimino = getRandomTetrimino(rnd);
         PossibleGarbageCalculator possibleGarbageCalculator = new PossibleGarbageCalculator();
@@ -67,14 +101,12 @@ public class MatchMaker {
                     possibleGarbageToFirst,
                     firstPlayer
             );
-            long start = System.currentTimeMillis();
             secondGameState.makeMove(
                     curTetrimino,
                     nextTetrimino,
                     possibleGarbageToSecond,
                     secondPlayer
             );
-            System.out.println(System.currentTimeMillis() - start);
 
             if (firstGameState.lost && secondGameState.lost) {
                 return DRAW;
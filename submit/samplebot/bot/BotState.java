@@ -156,4 +156,12 @@ public class BotState {
     public int getSkip() {
         return myBot.getSkip();
     }
+
+    public int getMaxTimebank() {
+        return MAX_TIMEBANK;
+    }
+
+    public int getTimePerMove() {
+        return TIME_PER_MOVE;
+    }
 }
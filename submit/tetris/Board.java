@@ -1,5 +1,6 @@
 package tetris;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class Board {
@@ -128,11 +129,33 @@ public class Board {
         return width;
     }
 
+    /**
+     * Copies the cells and the penalty of a board of the same size.
+     */
+    public void copyFrom(Board board) {
+        if (board.height != height || board.width != width) {
+            throw new IllegalArgumentException("boards differ in size");
+        }
+        System.arraycopy(board.b, 0, b, 0, height);
+        penalty = board.penalty;
+    }
+
     public DropResult drop(TetriminoWithPosition twp, Move lastMove, int combo, int round) {
+        return drop(twp, lastMove, combo, round, new DropResult(new Board(this)));
+    }
+
+    /**
+     * Same as {@link #drop(TetriminoWithPosition, Move, int, int)}, writes the result and the resulting board to
+     * result, a board of the same size, instead of allocating them.
+     *
+     * @return result, null if the tetrimino is above the board
+     */
+    public DropResult drop(TetriminoWithPosition twp, Move lastMove, int combo, int round, DropResult result) {
         int leftCol = twp.getLeftCol();
         Tetrimino tetrimino = twp.getTetrimino();
         int topRow = twp.getTopRow();
-        Board r = new Board(this);
+        Board r = result.getBoard();
+        r.copyFrom(this);
         for (int i = 0; i < tetrimino.getHeight(); i++) {
             for (int j = 0; j < tetrimino.getWidth(); j++) {
                 if (tetrimino.get(i, j)) {
@@ -167,13 +190,23 @@ public class Board {
 
         int skipAdded = (wasTSpin && linesCleared == 2 || linesCleared == 4) ? 1 : 0;
 
-        return new DropResult(r, linesCleared, scoreDelta, newCombo, skipAdded, lost);
+        result.set(linesCleared, scoreDelta, newCombo, skipAdded, lost);
+        return result;
     }
 
     public DropResult skipMove(int combo, int round) {
-        Board r = new Board(this);
+        return skipMove(combo, round, new DropResult(new Board(this)));
+    }
+
+    /**
+     * Same as {@link #skipMove(int, int)}, writes to result like {@link #drop(TetriminoWithPosition, Move, int, int, DropResult)}.
+     */
+    public DropResult skipMove(int combo, int round, DropResult result) {
+        Board r = result.getBoard();
+        r.copyFrom(this);
         r.addPenaltyIfNeeded(round);
-        return new DropResult(r, 0, 0, combo, -1, false);
+        result.set(0, 0, combo, -1, false);
+        return result;
     }
 
     public DropResult moveAndDrop(TetriminoWithPosition fallingTetrimino, List<Move> moves, int combo, int round) {
@@ -255,33 +288,20 @@ public class Board {
         return cnt == 3;
     }
 
+    /**
+     * Moves the rows above every full row down, rows are bit masks so they move whole. Penalty rows are never full.
+     */
     private int clearFullRows() {
-        boolean[] full = new boolean[height];
-        int linesCleared = 0;
-        for (int row = 0; row < height - penalty; row++) {
-            full[row] = true;
-            for (int col = 0; col < width; col++) {
-                if (!get(row, col)) {
-                    full[row] = false;
-                    break;
-                }
-            }
-            if (full[row]) {
-                linesCleared++;
+        int fullRow = (int) ((1L << width) - 1);
+        int botRow = height - 1;
+        for (int row = height - 1; row >= 0; row--) {
+            if (row >= height - penalty || b[row] != fullRow) {
+                b[botRow--] = b[row];
             }
         }
-        for (int col = 0; col < width; col++) {
-            int botRow = height - 1;
-            for (int row = height - 1; row >= 0; row--) {
-                if (!full[row]) {
-                    set(botRow, col, get(row, col));
-                    botRow--;
-                }
-            }
-            while (botRow >= 0) {
-                set(botRow, col, false);
-                botRow--;
-            }
+        int linesCleared = botRow + 1;
+        while (botRow >= 0) {
+            b[botRow--] = 0;
         }
         return linesCleared;
     }
@@ -322,6 +342,26 @@ public class Board {
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(b);
+    }
+
+    public long longHashCode() {
+        long h = penalty;
+        for (int row = 0; row < height; row++) {
+            h = (h + b[row]) * 0x9E3779B97F4A7C15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void copyRowsTo(int[] dst, int offset) {
+        System.arraycopy(b, 0, dst, offset, height);
+    }
+
     public int getColumnHeight(int col) {
         return getHeight() - getTopRowInColumn(col);
     }
@@ -353,21 +393,22 @@ public class Board {
     }
 
     public boolean collides(TetriminoWithPosition p) {
-        if (p.getLeftCol() < 0) {
+        return collides(p.getTetrimino(), p.getTopRow(), p.getLeftCol());
+    }
+
+    public boolean collides(Tetrimino t, int topRow, int leftCol) {
+        if (leftCol < 0) {
             return true;
         }
-        Tetrimino t = p.getTetrimino();
-        if (p.getLeftCol() + t.getWidth() - 1 >= getWidth()) {
+        if (leftCol + t.getWidth() - 1 >= getWidth()) {
             return true;
         }
-        if (p.getTopRow() + t.getHeight() - 1 >= getHeight()) {
+        if (topRow + t.getHeight() - 1 >= getHeight()) {
             return true;
         }
         for (int row = 0; row < t.getHeight(); row++) {
-            for (int col = 0; col < t.getWidth(); col++) {
-                if (t.get(row, col) && get(p.getTopRow() + row, p.getLeftCol() + col)) {
-                    return true;
-                }
+            if ((b[topRow + row] & (t.getRowMask(row) << leftCol)) != 0) {
+                return true;
             }
         }
         return false;
@@ -25,10 +25,14 @@ import samplebot.field.ShapeType;
 import samplebot.moves.MoveType;
 import samplebot.player.Player;
 import tetris.logic.BestMoveFinder;
+import tetris.logic.Ponderer;
 import tetris.logic.PossibleGarbageCalculator;
+import tetris.logic.TimeManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static tetris.TetriminoType.*;
 
@@ -42,9 +46,12 @@ import static tetris.TetriminoType.*;
  */
 
 public class BotStarter {
+    private static final long PONDER_MILLIS = 5000;
 
-    private final BestMoveFinder bestMoveFinder = BestMoveFinder.getBest();
+    private final BestMoveFinder bestMoveFinder = BestMoveFinder.getBest().useSubtreeReuse();
     private final PossibleGarbageCalculator possibleGarbageCalculator = new PossibleGarbageCalculator();
+    private final Ponderer ponderer = createPonderer(bestMoveFinder);
+    private TimeManager timeManager;
     static int expectedScore;
     static int expectedCombo;
 
@@ -60,15 +67,34 @@ public class BotStarter {
         if (state.getMyBot().getCombo() != expectedCombo) {
             throw new RuntimeException("wrong combo. expected = " + expectedCombo + ", actual = " + state.getMyBot().getCombo());
         }/**/
+        long start = System.nanoTime();
+        if (timeManager == null) {
+            timeManager = new TimeManager(state.getMaxTimebank(), state.getTimePerMove(), System.err);
+        }
         GameState gameState = getGameState(state);
-        List<Move> moves = bestMoveFinder.findBestMoves(gameState);
+        List<Move> moves = ponderer == null ? null : ponderer.take(gameState, 1);
+        boolean pondered = moves != null;
+        if (!pondered) {
+            moves = bestMoveFinder.findBestMoves(gameState, () -> timeManager.getDeadline(
+                    start,
+                    timeout,
+                    gameState,
+                    bestMoveFinder.getLastRootMargin(),
+                    bestMoveFinder.getLastRootChoicesCnt()
+            ));
+        }
 
-        updateExpectedScore(gameState, moves);
+        DropResult dropResult = updateExpectedScore(gameState, moves);
 
         System.err.println("Round = " + state.getRound());
         System.err.println(gameState.getFallingTetrimino());
         System.err.println(gameState.getBoard());
         System.err.println(moves);
+        System.err.println(pondered ? "Pondered" : "Widths = " + Arrays.toString(bestMoveFinder.getLastCompletedWidths()));
+        System.err.println("Reuse hit rate = " + bestMoveFinder.getReuseHitRate());
+        if (ponderer != null) {
+            System.err.println("Ponder hits = " + ponderer.getHitCnt() + ", misses = " + ponderer.getMissCnt());
+        }
         System.err.println("-----------------------");
 
         ArrayList<MoveType> res = new ArrayList<>();
@@ -76,11 +102,44 @@ public class BotStarter {
         for (Move move : moves) {
             res.add(convertMove(move));
         }
+        timeManager.finish(timeout, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (ponderer != null && !dropResult.isLost() && gameState.getNextTetrimino() != null) {
+            ponderer.ponder(predictNextGameState(state, gameState, dropResult));
+        }
 
         return res;
     }
 
-    private void updateExpectedScore(GameState gameState, List<Move> moves) {
+    /**
+     * Pondering searches the predicted next state while the opponent moves, on as many threads as there are
+     * processors. -Dtetris.ponderThreads=0 turns it off, e.g. where the bot has to share one core.
+     *
+     * @return null if pondering is off
+     */
+    private static Ponderer createPonderer(BestMoveFinder finder) {
+        int threadsCnt = Integer.getInteger("tetris.ponderThreads", Runtime.getRuntime().availableProcessors());
+        return threadsCnt > 0 ? new Ponderer(finder, threadsCnt, PONDER_MILLIS) : null;
+    }
+
+    /**
+     * @return state of the next round if no garbage comes, the tetrimino after the next one is unknown
+     */
+    private GameState predictNextGameState(BotState state, GameState gameState, DropResult dropResult) {
+        Board board = dropResult.getBoard();
+        TetriminoType nextTetrimino = gameState.getNextTetrimino();
+        Player opponent = state.getOpponent();
+        return new GameState(
+                board,
+                board.newFallingTetrimino(nextTetrimino),
+                null,
+                dropResult.getCombo(),
+                gameState.getRound() + 1,
+                gameState.getSkipCnt() + dropResult.getSkipAdded(),
+                possibleGarbageCalculator.calculatePossibleGarbage(getBoard(state.getOpponentField()), nextTetrimino, opponent.getPoints(), opponent.getCombo())
+        );
+    }
+
+    private DropResult updateExpectedScore(GameState gameState, List<Move> moves) {
         DropResult dropResult = gameState.getBoard().moveAndDrop(
                 gameState.getFallingTetrimino(),
                 moves,
@@ -89,6 +148,7 @@ public class BotStarter {
         );
         expectedScore += dropResult.getScoreAdded();
         expectedCombo = dropResult.getCombo();
+        return dropResult;
     }
 
     private MoveType convertMove(Move move) {
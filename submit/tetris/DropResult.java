@@ -2,14 +2,27 @@ package tetris;
 
 public class DropResult {
     private final Board board;
-    private final int scoreAdded;
-    private final int newCombo;
-    private final int skipAdded;
-    private final int linesCleared;
-    private final boolean lost;
+    private int scoreAdded;
+    private int newCombo;
+    private int skipAdded;
+    private int linesCleared;
+    private boolean lost;
 
     public DropResult(Board board, int linesCleared, int scoreAdded, int newCombo, int skipAdded, boolean lost) {
         this.board = board;
+        set(linesCleared, scoreAdded, newCombo, skipAdded, lost);
+    }
+
+    /**
+     * Result for {@link Board#drop(TetriminoWithPosition, Move, int, int, DropResult)} and
+     * {@link Board#skipMove(int, int, DropResult)} to overwrite, board included, so a search can keep one per
+     * placement instead of allocating a board per move.
+     */
+    public DropResult(Board board) {
+        this.board = board;
+    }
+
+    void set(int linesCleared, int scoreAdded, int newCombo, int skipAdded, boolean lost) {
         this.linesCleared = linesCleared;
         this.scoreAdded = scoreAdded;
         this.newCombo = newCombo;
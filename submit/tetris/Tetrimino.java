@@ -28,6 +28,7 @@ public class Tetrimino {
 
     private final TetriminoType type;
     private final boolean[][] b;
+    private final int[] rowMasks;
     private final int rowShift;
     private final int colShift;
     private final int orientation;
@@ -35,6 +36,14 @@ public class Tetrimino {
     public Tetrimino(TetriminoType type, boolean[][] b, int orientation, int rowShift, int colShift) {
         this.type = type;
         this.b = b;
+        this.rowMasks = new int[b.length];
+        for (int row = 0; row < b.length; row++) {
+            for (int col = 0; col < b[0].length; col++) {
+                if (b[row][col]) {
+                    rowMasks[row] |= 1 << col;
+                }
+            }
+        }
         this.rowShift = rowShift;
         this.colShift = colShift;
         this.orientation = orientation;
@@ -68,6 +77,13 @@ public class Tetrimino {
         return b[row][col];
     }
 
+    /**
+     * @return cells of the row as bits, bit col set if the cell is filled, the layout of a board row
+     */
+    public int getRowMask(int row) {
+        return rowMasks[row];
+    }
+
     private static boolean[][] rotateArrayCW(boolean[][] b) {
         boolean[][] newB = new boolean[b[0].length][b.length];
         for (int newRow = 0; newRow < newB.length; newRow++) {
@@ -0,0 +1,158 @@
+package tetris.logic;
+
+import tetris.*;
+
+import java.util.*;
+
+import static tetris.Move.*;
+
+/**
+ * Beam search: every ply places one tetrimino, and only the beamWidths[ply] best states of the ply (over all root
+ * placements together) are expanded further. The falling and the next tetrimino are known, the ones after them are
+ * sampled: the search is repeated for samplesCnt random piece sequences and a root placement scores the mean over
+ * the samples of the best leaf below it. A root placement with nothing left below it in a sample gets the worst
+ * leaf of the sample.
+ * <p>
+ * States are evaluated like in {@link BestMoveFinder}; with two plies and beams wider than the placements count
+ * the chosen move is the one of BestMoveFinder without the expectimax expansion.
+ */
+public class BeamSearchMoveFinder implements MoveFinder {
+    private final Evaluator evaluator;
+    private final int[] beamWidths;
+    private final int samplesCnt;
+
+    /**
+     * @param beamWidths states kept after each ply, the length is the search depth
+     */
+    public BeamSearchMoveFinder(ParameterWeights parameterWeights, int[] beamWidths, int samplesCnt) {
+        if (beamWidths.length == 0 || samplesCnt < 1) {
+            throw new IllegalArgumentException("beamWidths = " + Arrays.toString(beamWidths) + ", samplesCnt = " + samplesCnt);
+        }
+        this.evaluator = new Evaluator(parameterWeights);
+        this.beamWidths = beamWidths.clone();
+        this.samplesCnt = samplesCnt;
+    }
+
+    @Override
+    public List<Move> findBestMoves(GameState gameState) {
+        GameState2 root = BestMoveFinder.toGameState2(gameState);
+        Board board = root.board;
+        TetriminoWithPosition fallingTetrimino = root.fallingTetrimino;
+        if (board.collides(fallingTetrimino)) {
+            return new ArrayList<>();
+        }
+        TetriminoWithPosition[][][] bfs = PathFinder.bfs(board, fallingTetrimino);
+        List<Node> rootNodes = new ArrayList<>();
+        expand(root, fallingTetrimino, bfs, -1, rootNodes);
+
+        int knownPliesCnt = root.nextTetrimino == null ? 1 : 2;
+        int samples = beamWidths.length > knownPliesCnt ? samplesCnt : 1;
+        Random rnd = new Random(board.longHashCode() ^ root.round);
+        double[] evaluationSums = new double[rootNodes.size()];
+        TetriminoType[] pieces = new TetriminoType[beamWidths.length];
+        for (int sample = 0; sample < samples; sample++) {
+            for (int ply = 1; ply < pieces.length; ply++) {
+                pieces[ply] = ply == 1 && root.nextTetrimino != null
+                        ? root.nextTetrimino
+                        : TetriminoType.ALL[rnd.nextInt(TetriminoType.ALL.length)];
+            }
+            double[] evaluations = search(rootNodes, pieces);
+            for (int i = 0; i < evaluationSums.length; i++) {
+                evaluationSums[i] += evaluations[i];
+            }
+        }
+
+        Node best = null;
+        double bestEvaluation = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < rootNodes.size(); i++) {
+            if (best == null || evaluationSums[i] < bestEvaluation) {
+                best = rootNodes.get(i);
+                bestEvaluation = evaluationSums[i];
+            }
+        }
+        if (best.position == null) {
+            return new ArrayList<>(Collections.singletonList(SKIP));
+        }
+        return BestMoveFinder.toForwardMoves(PathFinder.findMoves(fallingTetrimino, bfs, best.position));
+    }
+
+    /**
+     * @return best leaf evaluation below every root node
+     */
+    private double[] search(List<Node> rootNodes, TetriminoType[] pieces) {
+        double[] evaluations = new double[rootNodes.size()];
+        Arrays.fill(evaluations, Double.POSITIVE_INFINITY);
+        List<Node> nodes = rootNodes;
+        for (int ply = 0; ; ply++) {
+            List<Node> beam = new ArrayList<>();
+            for (Node node : nodes) {
+                if (node.lost || ply == beamWidths.length - 1) {
+                    evaluations[node.root] = Math.min(evaluations[node.root], node.evaluation);
+                } else {
+                    beam.add(node);
+                }
+            }
+            if (beam.isEmpty()) {
+                break;
+            }
+            Collections.sort(beam);
+            beam = beam.subList(0, Math.min(beam.size(), beamWidths[ply]));
+
+            TetriminoType piece = pieces[ply + 1];
+            List<Node> children = new ArrayList<>();
+            for (Node node : beam) {
+                GameState2 state = node.state;
+                TetriminoWithPosition fallingTetrimino = state.board.newFallingTetrimino(piece);
+                if (state.board.collides(fallingTetrimino)) {
+                    children.add(new Node(state, SearchChild.collisionEvaluation(evaluator, state), true, node.root, null));
+                    continue;
+                }
+                expand(state, fallingTetrimino, PathFinder.bfs(state.board, fallingTetrimino), node.root, children);
+            }
+            nodes = children;
+        }
+
+        double worst = Double.NEGATIVE_INFINITY;
+        for (double evaluation : evaluations) {
+            if (evaluation != Double.POSITIVE_INFINITY) {
+                worst = Math.max(worst, evaluation);
+            }
+        }
+        for (int i = 0; i < evaluations.length; i++) {
+            if (evaluations[i] == Double.POSITIVE_INFINITY) {
+                evaluations[i] = worst;
+            }
+        }
+        return evaluations;
+    }
+
+    /**
+     * @param root root node index of the children, -1 to make each child its own root
+     */
+    private void expand(GameState2 state, TetriminoWithPosition fallingTetrimino, TetriminoWithPosition[][][] bfs, int root, List<Node> nodes) {
+        for (SearchChild child : SearchChild.generate(evaluator, state, fallingTetrimino, bfs)) {
+            nodes.add(new Node(child.state, child.evaluation, child.lost, root < 0 ? nodes.size() : root, child.position));
+        }
+    }
+
+    private static final class Node implements Comparable<Node> {
+        final GameState2 state;
+        final double evaluation;
+        final boolean lost;
+        final int root;
+        final TetriminoWithPosition position; // null means skip
+
+        Node(GameState2 state, double evaluation, boolean lost, int root, TetriminoWithPosition position) {
+            this.state = state;
+            this.evaluation = evaluation;
+            this.lost = lost;
+            this.root = root;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            return Double.compare(evaluation, o.evaluation);
+        }
+    }
+}
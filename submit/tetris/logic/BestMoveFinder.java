@@ -3,22 +3,58 @@ package tetris.logic;
 import tetris.*;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
 
 import static java.lang.Math.*;
 import static tetris.Move.*;
 import static tetris.TetriminoType.*;
 import static tetris.logic.EvaluationParameter.*;
 
-public class BestMoveFinder {
+public class BestMoveFinder implements MoveFinder {
 
     public static final ParameterWeights BEST_PARAMETERS = new ParameterWeights()
             .put(BAD_CNT, 17.064971771382382).put(HOLE_CNT, 5.733177366629449).put(HEIGHT, 1.4076593440352523).put(SEMI_BAD_CNT, 5.076315939386729).put(SCORE, -2.2862666329869157).put(HEIGHT_POW, 8.751944794972278).put(CELLS_ABOVE_TOP, 0.23822656903576234).put(FLAT_RATE, 0.6922331319044679).put(COMBO, -0.3614692532280521).put(PREV_STATE, 0.017307843006568957).put(SKIP_CNT, -7.438704615109288).put(T_SPIN_PATTERN, -12.47511154380235).put(SEMI_T_SPIN_PATTERN, -2.3599588643506335).put(LOW_EFFICIENCY, 12.290719514160582).put(MONOTONIC_RATE, 2.1585022287073583).put(I_PATTERN, -5.377388018547392)
             .put(LOW_EFFICIENCY2, 6);
 
     public static final int DEFAULT_ONE_MORE_LEVEL_NODES_CNT = 5;
+    private static final int MAX_ANYTIME_INNER_WIDTH = 8;
+    private static final List<Integer> NO_GARBAGE = Collections.singletonList(0);
 
     private final Evaluator evaluator;
     private final int oneMoreLevelNodesCnt;
+    private final LongAdder nodeCnt = new LongAdder();
+    private EvaluationCache evaluationCache;
+    private QuantizedEvaluator quantizedEvaluator;
+    private TranspositionTable transpositionTable;
+    private long transpositionSalt;
+    private final ThreadLocal<BoardBatch> batches = new ThreadLocal<>();
+    private ForkJoinPool pool;
+    private double prefilterKeepFraction = 1;
+    private double prefilterMargin = Double.POSITIVE_INFINITY;
+    private boolean chancePruning;
+    private double expansionGap = Double.POSITIVE_INFINITY;
+    private long expansionNodeBudget = Long.MAX_VALUE;
+    private long searchStartNodeCnt;
+    private long extensionNodeBudget;
+    private final LongAdder extendedCnt = new LongAdder();
+    private final LongAdder prunedTypeCnt = new LongAdder();
+    private final long[] typeAboveAverageCnts = new long[TetriminoType.ALL.length];
+    private final SearchLimits defaultLimits;
+    private volatile int[] lastCompletedWidths = new int[0];
+    private volatile double lastRootMargin = Double.POSITIVE_INFINITY;
+    private volatile int lastRootChoicesCnt;
+    private volatile boolean stopped;
+    private LongSupplier clock = System::nanoTime;
+    private boolean subtreeReuse;
+    private volatile GameState2 lastBestChild;
+    private volatile PredictedSearch[] lastBestChildSearches;
+    private int rootCnt;
+    private int reusedRootCnt;
+    private final LongAdder duplicateCnt = new LongAdder();
 
     public static BestMoveFinder getBest() {
         return new BestMoveFinder(BEST_PARAMETERS, DEFAULT_ONE_MORE_LEVEL_NODES_CNT);
@@ -27,26 +63,422 @@ public class BestMoveFinder {
     public BestMoveFinder(ParameterWeights parameterWeight, int oneMoreLevelNodesCnt) {
         this.oneMoreLevelNodesCnt = oneMoreLevelNodesCnt;
         this.evaluator = new Evaluator(parameterWeight);
+        this.defaultLimits = new SearchLimits(oneMoreLevelNodesCnt != 1 ? new int[]{oneMoreLevelNodesCnt} : new int[0], null, 0);
     }
 
+    /**
+     * @return new finder with the same weights and settings, sharing the evaluation cache and the transposition
+     * table (both may be used by several threads). The pool isn't copied: copies are meant to search on threads
+     * of their own, e.g. in {@link Ponderer}.
+     */
+    public BestMoveFinder copy() {
+        BestMoveFinder r = new BestMoveFinder(evaluator.getParameterWeights(), oneMoreLevelNodesCnt);
+        r.evaluationCache = evaluationCache;
+        r.quantizedEvaluator = quantizedEvaluator;
+        r.transpositionTable = transpositionTable;
+        r.prefilterKeepFraction = prefilterKeepFraction;
+        r.prefilterMargin = prefilterMargin;
+        r.chancePruning = chancePruning;
+        r.expansionGap = expansionGap;
+        r.expansionNodeBudget = expansionNodeBudget;
+        r.extensionNodeBudget = extensionNodeBudget;
+        r.clock = clock;
+        r.subtreeReuse = subtreeReuse;
+        return r;
+    }
+
+    /**
+     * With the quantized evaluation the cache keeps its int static evaluations, see {@link EvaluationCache#ofQuantized}.
+     */
+    public BestMoveFinder useEvaluationCache(int capacity) {
+        if (capacity <= 0) {
+            this.evaluationCache = null;
+        } else {
+            this.evaluationCache = quantizedEvaluator != null ? EvaluationCache.ofQuantized(capacity) : new EvaluationCache(capacity);
+        }
+        return this;
+    }
+
+    public EvaluationCache getEvaluationCache() {
+        return evaluationCache;
+    }
+
+    /**
+     * Stores the values of searched states, the root and its expectimax expansions excluded, and returns them
+     * when the same state is searched again with the same prevStateEval, so a hit is the value the search would
+     * compute, see {@link TranspositionTable}.
+     * The whole table is allocated off-heap up front, so it is left to callers that search long enough to use it.
+     */
+    public BestMoveFinder useTranspositionTable(int megabytes) {
+        return useTranspositionTable(megabytes > 0 ? TranspositionTable.ofMegabytes(megabytes) : null);
+    }
+
+    /**
+     * Shares the table, e.g. between the finders of concurrent games.
+     */
+    public BestMoveFinder useTranspositionTable(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+        return this;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Scores nodes with {@link QuantizedEvaluator} instead, evaluations are then integers in units of
+     * 1 / QuantizedEvaluator.SCALE. Bypasses the batch; an evaluation cache is switched to int entries. The
+     * transposition table keeps 64-bit values: searched values include the loss and previous state terms, which
+     * don't fit an int. Its hits are stored searched values, keyed by prevStateEval too, so they are the same
+     * integers whichever order of searches filled the table.
+     */
+    public BestMoveFinder useQuantizedEvaluation() {
+        this.quantizedEvaluator = new QuantizedEvaluator(evaluator.getParameterWeights());
+        if (evaluationCache != null) {
+            evaluationCache = EvaluationCache.ofQuantized(evaluationCache.getCapacity());
+        }
+        return this;
+    }
+
+    /**
+     * Replaces {@link System#nanoTime()} as the time of the anytime search and its deadlines, so tests and
+     * simulations can run it on a clock of their own. May be called from the search threads.
+     */
+    public BestMoveFinder useClock(LongSupplier clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Searches the root placements and the expectimax expansions on a ForkJoinPool with the given parallelism,
+     * 1 or less means sequential. Every task writes its own slot and results are combined in the sequential
+     * order, so the chosen move is the same as without the pool. That holds with a transposition table too: an
+     * entry is exactly the value any worker would compute for its key, so it doesn't matter which one stored it.
+     */
+    public BestMoveFinder useParallelism(int parallelism) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        return this;
+    }
+
+    /**
+     * Enables the cheap first-stage filter, see {@link #prefilter}.
+     */
+    public BestMoveFinder usePrefilter(double keepFraction, double margin) {
+        this.prefilterKeepFraction = keepFraction;
+        this.prefilterMargin = margin;
+        return this;
+    }
+
+    /**
+     * Stops averaging a sequential expectimax node over the piece types once the types searched so far and
+     * {@link Evaluator#getLowerBound} for the rest prove it can't beat the best node (Star1). Types are searched
+     * worst first by how often they came out above the average of earlier chance nodes, so the partial average
+     * grows early (Star2-style ordering) without probing every node. The chosen move doesn't change. Not used with
+     * the quantized evaluation or the pool.
+     */
+    public BestMoveFinder useChancePruning() {
+        this.chancePruning = true;
+        return this;
+    }
+
+    /**
+     * Expands only the placements within gap of the best one, so calm positions get fewer chance nodes and close
+     * decisions get up to the width the finder was created with. Besides the best placement, no more placements
+     * are expanded once the move has taken nodeBudget nodes (sequential search only, the pool expands all of them).
+     */
+    public BestMoveFinder useAdaptiveWidth(double gap, long nodeBudget) {
+        this.expansionGap = gap;
+        this.expansionNodeBudget = nodeBudget;
+        return this;
+    }
+
+    /**
+     * Searches one more chance level below the expanded root placements that are volatile: with pending garbage
+     * or on a board {@link Evaluator#isVolatile} flags, the best placement for each piece type becomes a chance
+     * node too. Placements are extended best first until the move has used nodeBudget nodes. Nothing is extended
+     * without the expectimax expansion (width 1), with a pool or when the search already has a second chance level.
+     */
+    public BestMoveFinder useSelectiveExtension(long nodeBudget) {
+        this.extensionNodeBudget = nodeBudget;
+        return this;
+    }
+
+    /**
+     * @return root placements expanded by {@link #useSelectiveExtension} since the finder was created
+     */
+    public long getExtendedCnt() {
+        return extendedCnt.sum();
+    }
+
+    /**
+     * Lets the next anytime search continue from this one. The chance node of the chosen placement searched the
+     * next position for every piece type after it; their moves are kept. If the previous move neither scored nor
+     * cleared lines and the new position is the predicted one (same board, no garbage), the kept search of the
+     * actual next piece is a finished pass of the new search: after the first pass, its moves replace the first
+     * pass's, and the passes of the schedule it is at least as wide as are skipped. Its values were searched with
+     * the previous state term of the chosen placement rather than of a fresh root, so its moves may differ from a
+     * fresh pass of the same width where that term decides.
+     */
+    public BestMoveFinder useSubtreeReuse() {
+        this.subtreeReuse = true;
+        return this;
+    }
+
+    /**
+     * @return share of the anytime searches since {@link #useSubtreeReuse} that started from the previous one's
+     * kept search
+     */
+    public double getReuseHitRate() {
+        return rootCnt == 0 ? 0 : reusedRootCnt / (double) rootCnt;
+    }
+
+    /**
+     * @return placements since the finder was created that gave the same state as an earlier sibling and took
+     * its values instead of being searched
+     */
+    public long getDuplicateCnt() {
+        return duplicateCnt.sum();
+    }
+
+    /**
+     * @return piece type searches skipped by {@link #useChancePruning()} since the finder was created
+     */
+    public long getPrunedTypeCnt() {
+        return prunedTypeCnt.sum();
+    }
+
+    /**
+     * @return number of placements that got the full evaluation since the finder was created
+     */
+    public long getNodeCnt() {
+        return nodeCnt.sum();
+    }
+
+    /**
+     * @return expectimax widths per chance level of the deepest search the last anytime call finished
+     */
+    public int[] getLastCompletedWidths() {
+        return lastCompletedWidths.clone();
+    }
+
+    /**
+     * @return evaluation difference between the two best placements at the root of the last search, before the
+     * expectimax expansion; infinity if there was at most one
+     */
+    public double getLastRootMargin() {
+        return lastRootMargin;
+    }
+
+    /**
+     * @return number of placements (and skip) at the root of the last search
+     */
+    public int getLastRootChoicesCnt() {
+        return lastRootChoicesCnt;
+    }
+
+    /**
+     * Aborts the running search at its next node, or the next search if none is running; the search after it
+     * runs normally. A stopped anytime search returns the moves of its last finished search, or null if it hadn't
+     * finished one, other searches return null. May be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return moves, null if the search was stopped, see {@link #stop}
+     */
+    @Override
     public List<Move> findBestMoves(GameState gameState) {
-        Board board = gameState.getBoard();
-        List<Move> moves = findBestMoves(
-                new GameState2(
-                        board,
-                        gameState.getFallingTetrimino(),
-                        gameState.getNextTetrimino(),
-                        0,
-                        gameState.getCombo(),
-                        gameState.getRound(),
-                        0,
-                        gameState.getSkipCnt(),
-                        gameState.getPossibleGarbage(),
-                        0
-                ),
-                true,
-                oneMoreLevelNodesCnt != 1
-        ).getMoves();
+        try {
+            GameState2 root = startSearch(gameState);
+            List<Move> moves = findBestMoves(root, true, defaultLimits, 0).getMoves();
+            return toForwardMoves(moves);
+        } catch (SearchTimeout e) {
+            return null;
+        } finally {
+            stopped = false;
+        }
+    }
+
+    /**
+     * Anytime search. First searches without chance nodes, then with oneMoreLevelNodesCnt expectimax nodes,
+     * doubling them until every placement is one, then gives the best oneMoreLevelNodesCnt placements a second
+     * chance level of growing width. An unfinished search is abandoned at the deadline and the moves of the last
+     * finished one are returned; the first search has no deadline, so there is a move unless {@link #stop} comes
+     * first. A search that wouldn't finish in time judging by the previous one isn't started.
+     *
+     * @param deadline in {@link System#nanoTime()} terms, or of the clock given to {@link #useClock}
+     */
+    public List<Move> findBestMoves(GameState gameState, long deadline) {
+        return findBestMoves(gameState, () -> deadline);
+    }
+
+    /**
+     * Same as {@link #findBestMoves(GameState, long)}, the deadline is asked for once the first search has
+     * finished, so it may depend on {@link #getLastRootMargin()} and {@link #getLastRootChoicesCnt()}.
+     */
+    public List<Move> findBestMoves(GameState gameState, LongSupplier deadlineSupplier) {
+        try {
+            return findAnytimeMoves(gameState, deadlineSupplier);
+        } finally {
+            stopped = false;
+        }
+    }
+
+    private List<Move> findAnytimeMoves(GameState gameState, LongSupplier deadlineSupplier) {
+        GameState2 root = startSearch(gameState);
+        PredictedSearch predicted = takePredictedSearch(root);
+        List<Move> moves = null;
+        int[] completedWidths = new int[0];
+        long lastNanos = 0;
+        long deadline = 0;
+        for (int[] widths : getAnytimeSchedule(root)) {
+            if (moves != null && completedWidths.length == 0) {
+                deadline = deadlineSupplier.getAsLong();
+                if (predicted != null) {
+                    moves = new ArrayList<>(predicted.moves);
+                    completedWidths = new int[]{predicted.width};
+                    lastNanos = predicted.nanos;
+                }
+            }
+            if (predicted != null && widths.length == 1 && widths[0] <= predicted.width) {
+                continue;
+            }
+            long start = clock.getAsLong();
+            if (stopped) {
+                break;
+            }
+            if (moves != null && (double) lastNanos * getRelativeCost(widths) / getRelativeCost(completedWidths) > deadline - start) {
+                break;
+            }
+            try {
+                moves = findBestMoves(root, true, new SearchLimits(widths, moves != null ? clock : null, deadline), 0).getMoves();
+            } catch (SearchTimeout e) {
+                break;
+            }
+            completedWidths = widths;
+            lastNanos = clock.getAsLong() - start;
+        }
+        lastCompletedWidths = completedWidths;
+        return moves == null ? null : toForwardMoves(moves);
+    }
+
+    private List<int[]> getAnytimeSchedule(GameState2 root) {
+        int rootChildrenCnt = root.skipCnt > 0 ? 1 : 0;
+        if (!root.board.collides(root.fallingTetrimino)) {
+            rootChildrenCnt += getAvailableFinalPositions(root.board, root.fallingTetrimino, PathFinder.bfs(root.board, root.fallingTetrimino)).size();
+        }
+        List<int[]> schedule = new ArrayList<>();
+        schedule.add(new int[0]);
+        if (root.nextTetrimino == null) {
+            return schedule;
+        }
+        int width = max(1, oneMoreLevelNodesCnt);
+        for (; width < rootChildrenCnt; width *= 2) {
+            schedule.add(new int[]{width});
+        }
+        schedule.add(new int[]{max(1, rootChildrenCnt)});
+        for (int innerWidth = 1; innerWidth <= MAX_ANYTIME_INNER_WIDTH; innerWidth *= 2) {
+            schedule.add(new int[]{max(1, oneMoreLevelNodesCnt), innerWidth});
+        }
+        return schedule;
+    }
+
+    /**
+     * @return rough cost of a search with the widths in searches without chance nodes
+     */
+    private static double getRelativeCost(int[] widths) {
+        double r = 1;
+        double expanded = 1;
+        for (int width : widths) {
+            expanded *= width * TetriminoType.ALL.length;
+            r += expanded;
+        }
+        return r;
+    }
+
+    /**
+     * @return root of the search
+     */
+    private GameState2 startSearch(GameState gameState) {
+        GameState2 root = toGameState2(gameState);
+        searchStartNodeCnt = nodeCnt.sum();
+        if (transpositionTable != null) {
+            transpositionTable.newSearch();
+            transpositionSalt = calcTranspositionSalt();
+        }
+        return root;
+    }
+
+    /**
+     * @return the previous search's kept search of the root, see {@link #useSubtreeReuse}; null if there is none
+     */
+    private PredictedSearch takePredictedSearch(GameState2 root) {
+        GameState2 predicted = lastBestChild;
+        PredictedSearch[] searches = lastBestChildSearches;
+        lastBestChild = null;
+        lastBestChildSearches = null;
+        if (!subtreeReuse) {
+            return null;
+        }
+        rootCnt++;
+        if (predicted == null
+                || searches == null
+                || root.nextTetrimino == null
+                || searches[root.nextTetrimino.ordinal()] == null
+                || searches[root.nextTetrimino.ordinal()].width == 0
+                || predicted.score != 0
+                || predicted.linesCleared != 0
+                || predicted.possibleGarbage.get(0) != 0
+                || root.possibleGarbage.get(0) != 0
+                || predicted.round != root.round
+                || predicted.combo != root.combo
+                || predicted.skipCnt != root.skipCnt
+                || predicted.board.getPenalty() != root.board.getPenalty()
+                || !root.fallingTetrimino.equals(predicted.fallingTetrimino)
+                || !root.board.equals(predicted.board)) {
+            return null;
+        }
+        reusedRootCnt++;
+        return searches[root.nextTetrimino.ordinal()];
+    }
+
+    static GameState2 toGameState2(GameState gameState) {
+        return new GameState2(
+                gameState.getBoard(),
+                gameState.getFallingTetrimino(),
+                gameState.getNextTetrimino(),
+                0,
+                gameState.getCombo(),
+                gameState.getRound(),
+                0,
+                gameState.getSkipCnt(),
+                gameState.getPossibleGarbage(),
+                0
+        );
+    }
+
+    /**
+     * Hash of everything besides the state that changes searched values.
+     */
+    private long calcTranspositionSalt() {
+        String settings = evaluator.getParameterWeights() + "|" + prefilterKeepFraction + "|" + prefilterMargin + "|" + (quantizedEvaluator != null);
+        long r = 0xCBF29CE484222325L;
+        for (int i = 0; i < settings.length(); i++) {
+            r = (r ^ settings.charAt(i)) * 0x100000001B3L;
+        }
+        return r;
+    }
+
+    /**
+     * Search collects moves from the final position back to the start. Reverses them and replaces trailing
+     * DOWNs with a DROP.
+     */
+    static List<Move> toForwardMoves(List<Move> moves) {
         Collections.reverse(moves);
         boolean removedSomeDowns = false;
         while (moves.size() > 0 && moves.get(moves.size() - 1) == DOWN) {
@@ -59,7 +491,20 @@ public class BestMoveFinder {
         return moves;
     }
 
-    private MovesWithEvaluation findBestMoves(GameState2 gameState, boolean shouldFindMoves, boolean shouldUseOneMoreLevel) {
+    private MovesWithEvaluation findBestMoves(GameState2 gameState, boolean shouldFindMoves, SearchLimits limits, int chanceLevel) {
+        NodeArena arena = NodeArena.push();
+        try {
+            return findBestMoves(gameState, shouldFindMoves, limits, chanceLevel, arena);
+        } finally {
+            arena.pop();
+        }
+    }
+
+    private MovesWithEvaluation findBestMoves(GameState2 gameState, boolean shouldFindMoves, SearchLimits limits, int chanceLevel, NodeArena arena) {
+        limits.checkDeadline();
+        if (stopped) {
+            throw SearchTimeout.INSTANCE;
+        }
         final Board board = gameState.board;
         final TetriminoWithPosition fallingTetrimino = gameState.fallingTetrimino;
         final TetriminoType nextTetrimino = gameState.nextTetrimino;
@@ -73,154 +518,586 @@ public class BestMoveFinder {
         if (board.collides(fallingTetrimino)) {
             return new MovesWithEvaluation(
                     null,
-                    evaluator.getEvaluation(board, score, 0, prevStateEval, 0, linesCleared, true, round).evaluation
+                    evaluate(board, score, 0, prevStateEval, 0, linesCleared, true, round)
             );
         }
+        long transpositionKey = 0;
+        int depth = nextTetrimino == null ? 1 : 2;
+        int width = limits.getWidth(chanceLevel);
+        boolean keepsMoves = shouldFindMoves || (subtreeReuse && chanceLevel == 1);
+        if (transpositionTable != null && !keepsMoves && width == 0) {
+            transpositionKey = TranspositionTable.key(gameState, transpositionSalt);
+            double storedEvaluation = transpositionTable.get(transpositionKey, depth);
+            if (!Double.isNaN(storedEvaluation)) {
+                return new MovesWithEvaluation(null, storedEvaluation);
+            }
+        }
 
-        List<SearchState> searchStates = new ArrayList<>();
-
+        TetriminoWithPosition nextTwp = nextTetrimino == null ? null : board.newFallingTetrimino(nextTetrimino);
+        GameState2 skipState = null;
+        double skipEvaluation = 0;
+        boolean skipLost = false;
         if (skipCnt > 0) {
-            Board newBoard = board.skipMove(score, round).getBoard();
-            for (int i = 0; i < possibleGarbage.get(0); i++) { // todo garbage
-                newBoard.addPenalty();
-            }
-            EvaluationState curEvaluation = evaluator.getEvaluation(newBoard, score, combo, prevStateEval, skipCnt - 1, 0, false, round);
+            Board newBoard = SearchChild.skip(board, score, round, possibleGarbage.get(0), arena.getSkipResult(board));
+            boolean lost = Evaluator.isLost(newBoard, false);
+            nodeCnt.increment();
+            double curEvaluation = evaluate(newBoard, score, combo, prevStateEval, skipCnt - 1, 0, lost, round);
 
-            TetriminoWithPosition nextTwp = nextTetrimino == null ? null : newBoard.newFallingTetrimino(nextTetrimino);
-            GameState2 newGameState = new GameState2(
+            GameState2 newGameState = arena.getSkipRecord().set(
                     newBoard,
                     nextTwp,
                     null,
                     score,
                     combo,
                     round + 1,
-                    curEvaluation.evaluation,
+                    curEvaluation,
                     skipCnt - 1,
-                    Collections.singletonList(0), // todo garbage
+                    NO_GARBAGE, // todo garbage
                     linesCleared
             );
 
-            if (nextTetrimino == null || curEvaluation.lost) {
-                searchStates.add(new SearchState(curEvaluation.evaluation, newGameState, null, curEvaluation.lost));
+            skipState = newGameState;
+            skipLost = lost;
+            if (nextTetrimino == null || lost) {
+                skipEvaluation = curEvaluation;
             } else {
-                double evaluation = findBestMoves(newGameState, false, false).getEvaluation();
-                searchStates.add(new SearchState(evaluation, newGameState, null, curEvaluation.lost));
+                skipEvaluation = findBestMoves(newGameState, false, limits, SearchLimits.NO_EXPANSION).getEvaluation();
             }
         }
 
-        TetriminoWithPosition[][][] bfs = PathFinder.bfs(board, fallingTetrimino);
-        List<TetriminoWithPosition> availableFinalPositions = getAvailableFinalPositions(board, fallingTetrimino, bfs);
-
-        for (TetriminoWithPosition finalPosition : availableFinalPositions) {
-            DropResult dropResult = board.drop(finalPosition, PathFinder.getPrevMove(
-                    finalPosition,
-                    bfs[finalPosition.getTopRow()][finalPosition.getLeftCol()][finalPosition.getTetrimino().getOrientation()]),
-                    combo,
-                    round
-            );
+        arena.findPlacements(board, fallingTetrimino);
+        int childrenCnt = arena.getPlacementsCnt();
+        DropResult[] dropResults = arena.dropResults;
+        boolean[] lost = arena.lost;
+        for (int i = 0; i < childrenCnt; i++) {
+            DropResult dropResult = board.drop(arena.getPlacement(i), arena.getLastMove(i), combo, round, arena.getDropResult(i, board));
             Board newBoard = dropResult.getBoard();
-            for (int i = 0; i < possibleGarbage.get(0); i++) { // todo garbage
-                newBoard.addPenalty();
-            }
+            SearchChild.addGarbage(newBoard, possibleGarbage.get(0));
+            dropResults[i] = dropResult;
+            lost[i] = Evaluator.isLost(newBoard, dropResult.isLost());
+        }
+        boolean[] kept = prefilter(arena, childrenCnt, score, skipCnt);
+        int[] sameAs = findSameStates(fallingTetrimino.getTetrimino().getType(), arena, childrenCnt);
 
+        double[] evaluations = arena.evaluations;
+        int[] batchIndex = arena.batchIndex;
+        BoardBatch batch = getBatch(board);
+        boolean useBatch = evaluationCache == null && quantizedEvaluator == null;
+        for (int i = 0; i < childrenCnt; i++) {
+            if (!kept[i] || sameAs[i] != i) {
+                continue;
+            }
+            DropResult dropResult = dropResults[i];
+            Board newBoard = dropResult.getBoard();
             int newScore = score + dropResult.getScoreAdded();
-            int newCombo = dropResult.getCombo();
-            int newSkipCnt = skipCnt;
-            newSkipCnt += dropResult.getSkipAdded();
+            int newSkipCnt = skipCnt + dropResult.getSkipAdded();
             int newLinesCleared = linesCleared + dropResult.getLinesCleared();
+            if (useBatch) {
+                batchIndex[i] = batch.add(newBoard, newScore, dropResult.getCombo(), prevStateEval, newSkipCnt, newLinesCleared, lost[i], round);
+            } else {
+                evaluations[i] = evaluate(newBoard, newScore, dropResult.getCombo(), prevStateEval, newSkipCnt, newLinesCleared, lost[i], round);
+            }
+        }
+        if (useBatch) {
+            double[] batchEvaluations = arena.getBatchEvaluations(batch.size());
+            evaluator.evaluateBatch(batch, batchEvaluations);
+            for (int i = 0; i < childrenCnt; i++) {
+                if (kept[i] && sameAs[i] == i) {
+                    evaluations[i] = batchEvaluations[batchIndex[i]];
+                }
+            }
+        }
 
-            EvaluationState curEvaluation = evaluator.getEvaluation(
-                    newBoard,
-                    newScore,
-                    newCombo,
-                    prevStateEval,
-                    newSkipCnt,
-                    newLinesCleared,
-                    dropResult.isLost(),
-                    round
-            );
-            TetriminoWithPosition nextTwp = nextTetrimino == null ? null : newBoard.newFallingTetrimino(nextTetrimino);
-            GameState2 newGameState = new GameState2(
+        boolean parallel = shouldFindMoves && pool != null;
+        boolean needChildStates = nextTetrimino != null || width > 0 || shouldFindMoves;
+        GameState2[] childStates = arena.childStates;
+        double[] childEvaluations = arena.childEvaluations;
+        for (int i = 0; i < childrenCnt; i++) {
+            if (!kept[i]) {
+                continue;
+            }
+            if (sameAs[i] != i) {
+                duplicateCnt.increment();
+                childStates[i] = childStates[sameAs[i]];
+                childEvaluations[i] = childEvaluations[sameAs[i]];
+                continue;
+            }
+            nodeCnt.increment();
+            DropResult dropResult = dropResults[i];
+            Board newBoard = dropResult.getBoard();
+            double curEvaluation = evaluations[i];
+            if (!needChildStates) {
+                childEvaluations[i] = curEvaluation;
+                continue;
+            }
+            GameState2 newGameState = arena.getChildRecord(i).set(
                     newBoard,
                     nextTwp,
                     null,
-                    newScore,
-                    newCombo,
+                    score + dropResult.getScoreAdded(),
+                    dropResult.getCombo(),
                     round + 1,
-                    curEvaluation.evaluation,
-                    newSkipCnt,
-                    Collections.singletonList(0), // todo garbage
-                    newLinesCleared
+                    curEvaluation,
+                    skipCnt + dropResult.getSkipAdded(),
+                    NO_GARBAGE, // todo garbage
+                    linesCleared + dropResult.getLinesCleared()
             );
-            if (nextTetrimino == null || curEvaluation.lost) {
-                searchStates.add(new SearchState(curEvaluation.evaluation, newGameState, finalPosition, curEvaluation.lost));
-            } else {
-                double evaluation = findBestMoves(newGameState, false, false).getEvaluation();
-                searchStates.add(new SearchState(evaluation, newGameState, finalPosition, curEvaluation.lost));
+            childStates[i] = newGameState;
+            if (nextTetrimino == null || lost[i]) {
+                childEvaluations[i] = curEvaluation;
+            } else if (!parallel) {
+                childEvaluations[i] = findBestMoves(newGameState, false, limits, SearchLimits.NO_EXPANSION).getEvaluation();
+            }
+        }
+        if (parallel && nextTetrimino != null) {
+            forEachParallel(childrenCnt, i -> {
+                if (kept[i] && !lost[i] && sameAs[i] == i) {
+                    childEvaluations[i] = findBestMoves(childStates[i], false, limits, SearchLimits.NO_EXPANSION).getEvaluation();
+                }
+            });
+            for (int i = 0; i < childrenCnt; i++) {
+                childEvaluations[i] = childEvaluations[sameAs[i]];
+            }
+        }
+        int candidatesCnt = 0;
+        double[] candidateEvaluations = arena.candidateEvaluations;
+        int[] candidateChildren = arena.candidateChildren; // -1 means skip
+        if (skipState != null) {
+            candidateEvaluations[0] = skipEvaluation;
+            candidateChildren[0] = -1;
+            candidatesCnt = 1;
+        }
+        for (int i = 0; i < childrenCnt; i++) {
+            if (kept[i]) {
+                candidateEvaluations[candidatesCnt] = childEvaluations[i];
+                candidateChildren[candidatesCnt] = i;
+                candidatesCnt++;
             }
         }
 
-        Collections.sort(searchStates);
-        SearchState bestSearchState;
-        if (shouldUseOneMoreLevel) {
-            bestSearchState = null;
+        int selectedCnt = min(candidatesCnt, max(width, shouldFindMoves ? 2 : 1));
+        int[] selected = width > 0 || selectedCnt > 1 ? selectBest(candidateEvaluations, candidatesCnt, selectedCnt, arena.selected) : null;
+        if (shouldFindMoves) {
+            lastRootMargin = candidatesCnt > 1 ? candidateEvaluations[selected[1]] - candidateEvaluations[selected[0]] : Double.POSITIVE_INFINITY;
+            lastRootChoicesCnt = candidatesCnt;
+        }
+        int bestCandidate;
+        if (width > 0) {
+            int expandedCnt = getExpandedCnt(candidateEvaluations, selected, min(candidatesCnt, width));
+            List<SearchState> searchStates = new ArrayList<>(expandedCnt);
+            for (int i = 0; i < expandedCnt; i++) {
+                int child = candidateChildren[selected[i]];
+                SearchState searchState = child < 0
+                        ? new SearchState(skipEvaluation, skipState, null, skipLost)
+                        : new SearchState(childEvaluations[child], childStates[child], arena.getPlacement(child), lost[child]);
+                if (shouldFindMoves && subtreeReuse) {
+                    searchState.typeSearches = new PredictedSearch[TetriminoType.ALL.length];
+                }
+                searchStates.add(searchState);
+            }
+            bestCandidate = -1;
+            SearchState bestSearchState = null;
             double bestEvaluation = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < min(searchStates.size(), oneMoreLevelNodesCnt); i++) {
+            double[] expectedEvaluations = pool != null ? expectedEvaluationsParallel(searchStates, expandedCnt, nextTetrimino, limits, chanceLevel) : null;
+            double[] expandedEvaluations = arena.expandedEvaluations; // by sameAs, NaN until expanded
+            Arrays.fill(expandedEvaluations, 0, childrenCnt, Double.NaN);
+            for (int i = 0; i < expandedCnt; i++) {
+                if (pool == null && i > 0 && nodeCnt.sum() - searchStartNodeCnt >= expansionNodeBudget) {
+                    break;
+                }
                 SearchState searchState = searchStates.get(i);
-                double evaluation = expectedEvaluation(searchState, nextTetrimino);
-                if (bestSearchState == null || evaluation < bestEvaluation) {
-                    bestSearchState = searchState;
+                int child = candidateChildren[selected[i]];
+                int sameState = child < 0 ? -1 : sameAs[child];
+                double evaluation;
+                if (sameState >= 0 && !Double.isNaN(expandedEvaluations[sameState])) {
+                    evaluation = expandedEvaluations[sameState];
+                } else if (isExtended(searchState, chanceLevel, limits, possibleGarbage.get(0) > 0)) {
+                    extendedCnt.increment();
+                    evaluation = expectedEvaluation(searchState, nextTetrimino, limits.extend(), chanceLevel);
+                } else if (pool != null) {
+                    evaluation = expectedEvaluations[i];
+                } else if (chancePruning && quantizedEvaluator == null && bestCandidate >= 0 && limits.getWidth(chanceLevel + 1) == 0) {
+                    evaluation = boundedExpectedEvaluation(searchState, nextTetrimino, limits, chanceLevel, bestEvaluation);
+                } else {
+                    evaluation = expectedEvaluation(searchState, nextTetrimino, limits, chanceLevel);
+                }
+                if (sameState >= 0) {
+                    expandedEvaluations[sameState] = evaluation;
+                }
+                if (bestCandidate < 0 || evaluation < bestEvaluation) {
+                    bestCandidate = selected[i];
                     bestEvaluation = evaluation;
+                    bestSearchState = searchState;
                 }
             }
+            if (shouldFindMoves) {
+                lastBestChildSearches = bestSearchState.typeSearches;
+            }
         } else {
-            bestSearchState = searchStates.get(0);
+            bestCandidate = selected != null ? selected[0] : selectMin(candidateEvaluations, candidatesCnt);
+        }
+
+        int bestChild = candidateChildren[bestCandidate];
+        double evaluation = candidateEvaluations[bestCandidate];
+        TetriminoWithPosition bestPosition = bestChild < 0 ? null : arena.getPlacement(bestChild);
+        if (shouldFindMoves) {
+            lastBestChild = (bestChild < 0 ? skipState : childStates[bestChild]).copy();
+        }
+        if (transpositionKey != 0) {
+            transpositionTable.put(transpositionKey, evaluation, depth);
+        }
+        if (bestPosition == null) { // Skip was the best move. Warning! Very ugly code!
+            return new MovesWithEvaluation(Collections.singletonList(SKIP), evaluation);
+        }
+        List<Move> moves = keepsMoves ? arena.findMoves(bestChild) : null;
+        return new MovesWithEvaluation(moves, evaluation);
+    }
+
+    /**
+     * @return index of the smallest of the first n values, the first one on ties
+     */
+    private static int selectMin(double[] values, int n) {
+        int r = 0;
+        for (int i = 1; i < n; i++) {
+            if (Double.compare(values[i], values[r]) < 0) {
+                r = i;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Partial insertion sort, O(n * k). Same order as a stable sort of the first n values: smallest first, ties
+     * by index.
+     *
+     * @param r gets the indices of the k smallest of the first n values
+     * @return r
+     */
+    private static int[] selectBest(double[] values, int n, int k, int[] r) {
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (size == k && Double.compare(values[i], values[r[k - 1]]) >= 0) {
+                continue;
+            }
+            int j = size < k ? size++ : k - 1;
+            while (j > 0 && Double.compare(values[i], values[r[j - 1]]) < 0) {
+                r[j] = r[j - 1];
+                j--;
+            }
+            r[j] = i;
         }
+        return r;
+    }
+
+    /**
+     * @return whether the root placement gets one more chance level, see {@link #useSelectiveExtension}
+     */
+    private boolean isExtended(SearchState searchState, int chanceLevel, SearchLimits limits, boolean garbagePending) {
+        return chanceLevel == 0 && pool == null && !searchState.lost && limits.getWidth(1) == 0
+                && nodeCnt.sum() - searchStartNodeCnt < extensionNodeBudget
+                && (garbagePending || evaluator.isVolatile(searchState.gameState.board));
+    }
 
-        if (bestSearchState.position == null) { // Skip was the best move. Warning! Very ugly code!
-            return new MovesWithEvaluation(Collections.singletonList(SKIP), bestSearchState.evaluation);
+    /**
+     * Placements that clear the same lines, or an I, S or Z in the two orientations covering the same cells, may
+     * leave the same state. Only the first of them is evaluated and searched, the others take its values, so the
+     * chosen move is the same.
+     *
+     * @return index of the first kept placement with the same resulting state, for each of the n placements
+     */
+    private static int[] findSameStates(TetriminoType type, NodeArena arena, int n) {
+        DropResult[] dropResults = arena.dropResults;
+        boolean[] lost = arena.lost;
+        boolean[] kept = arena.kept;
+        int[] sameAs = arena.sameAs;
+        boolean possible = type == I || type == S || type == Z;
+        for (int i = 0; i < n; i++) {
+            sameAs[i] = i;
+            possible |= dropResults[i].getLinesCleared() > 0;
+        }
+        if (!possible) {
+            return sameAs;
+        }
+        long[] hashes = arena.hashes;
+        for (int i = 0; i < n; i++) {
+            if (!kept[i]) {
+                continue;
+            }
+            DropResult a = dropResults[i];
+            hashes[i] = a.getBoard().longHashCode();
+            for (int j = 0; j < i; j++) {
+                DropResult b = dropResults[j];
+                if (kept[j] && sameAs[j] == j && hashes[j] == hashes[i]
+                        && a.getScoreAdded() == b.getScoreAdded()
+                        && a.getCombo() == b.getCombo()
+                        && a.getSkipAdded() == b.getSkipAdded()
+                        && a.getLinesCleared() == b.getLinesCleared()
+                        && a.isLost() == b.isLost()
+                        && lost[i] == lost[j]
+                        && a.getBoard().getPenalty() == b.getBoard().getPenalty()
+                        && a.getBoard().equals(b.getBoard())) {
+                    sameAs[i] = j;
+                    break;
+                }
+            }
+        }
+        return sameAs;
+    }
+
+    /**
+     * @param selected indices of the best candidates, best first
+     * @return how many of the selected candidates become chance nodes: at most cnt, and with
+     * {@link #useAdaptiveWidth} only the ones within the gap of the best
+     */
+    private int getExpandedCnt(double[] evaluations, int[] selected, int cnt) {
+        if (expansionGap == Double.POSITIVE_INFINITY) {
+            return cnt;
+        }
+        double maxEvaluation = evaluations[selected[0]] + expansionGap;
+        int r = 1;
+        while (r < cnt && evaluations[selected[r]] <= maxEvaluation) {
+            r++;
+        }
+        return r;
+    }
+
+    /**
+     * First stage of the evaluation: ranks placements by {@link Evaluator#estimate} and keeps the best
+     * prefilterKeepFraction of them plus everything within prefilterMargin of the best estimate. With an
+     * infinite margin nothing is dropped. If every kept placement loses, all of them are kept.
+     *
+     * @return which of the n placements get the full evaluation and the recursive search
+     */
+    private boolean[] prefilter(NodeArena arena, int n, int score, int skipCnt) {
+        DropResult[] dropResults = arena.dropResults;
+        boolean[] lost = arena.lost;
+        boolean[] kept = arena.kept;
+        if (prefilterKeepFraction >= 1 || n == 0) {
+            Arrays.fill(kept, 0, n, true);
+            return kept;
+        }
+        double[] estimates = arena.estimates;
+        for (int i = 0; i < n; i++) {
+            DropResult dropResult = dropResults[i];
+            estimates[i] = evaluator.estimate(
+                    dropResult.getBoard(),
+                    score + dropResult.getScoreAdded(),
+                    dropResult.getCombo(),
+                    skipCnt + dropResult.getSkipAdded()
+            );
+        }
+        double[] sorted = arena.sortedEstimates;
+        System.arraycopy(estimates, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        int keepCnt = max(1, (int) ceil(n * prefilterKeepFraction));
+        double threshold = max(sorted[keepCnt - 1], sorted[0] + prefilterMargin);
+        boolean someKeptSurvives = false;
+        for (int i = 0; i < n; i++) {
+            kept[i] = estimates[i] <= threshold;
+            someKeptSurvives |= kept[i] && !lost[i];
+        }
+        if (!someKeptSurvives) {
+            Arrays.fill(kept, 0, n, true);
+        }
+        return kept;
+    }
+
+    /**
+     * The batch is only filled and scored between recursive calls, so one per thread is enough.
+     */
+    private BoardBatch getBatch(Board board) {
+        BoardBatch batch = batches.get();
+        if (batch == null || batch.getHeight() != board.getHeight() || batch.getWidth() != board.getWidth()) {
+            batch = new BoardBatch(board.getHeight(), board.getWidth());
+            batches.set(batch);
+        }
+        batch.clear();
+        return batch;
+    }
+
+    private double evaluate(Board board, int score, int combo, double prevStateEval, int skipCnt, int linesCleared, boolean lost, int round) {
+        if (quantizedEvaluator != null) {
+            if (evaluationCache == null) {
+                return quantizedEvaluator.evaluate(board, score, combo, (long) prevStateEval, skipCnt, linesCleared, lost, round);
+            }
+            return quantizedEvaluator.getCachedEvaluation(evaluationCache, board, score, combo, (long) prevStateEval, skipCnt, linesCleared, lost, round);
+        }
+        if (evaluationCache == null) {
+            return evaluator.evaluate(board, score, combo, prevStateEval, skipCnt, linesCleared, lost, round);
         }
-        List<Move> moves = shouldFindMoves ? PathFinder.findMoves(fallingTetrimino, bfs, bestSearchState) : null;
-        return new MovesWithEvaluation(moves, bestSearchState.evaluation);
+        return evaluator.getCachedEvaluation(evaluationCache, board, score, combo, prevStateEval, skipCnt, linesCleared, lost, round);
     }
 
-    private double expectedEvaluation(SearchState searchState, TetriminoType nextTetrimino) {
+    /**
+     * Chance node: average over the next piece. With a pool the seven searches are subtasks.
+     */
+    private double expectedEvaluation(SearchState searchState, TetriminoType nextTetrimino, SearchLimits limits, int chanceLevel) {
         if (searchState.lost) {
             return searchState.evaluation;
         }
+        if (pool != null) {
+            return expectedEvaluationsParallel(Collections.singletonList(searchState), 1, nextTetrimino, limits, chanceLevel)[0];
+        }
         double evaluation = 0;
         for (TetriminoType type : TetriminoType.ALL) {
-            GameState2 curGameState = searchState.gameState;
-
-            TetriminoWithPosition cur;
-            TetriminoType next;
-            if (nextTetrimino == null) {
-                cur = curGameState.board.newFallingTetrimino(type);
-                next = null;
-            } else {
-                cur = curGameState.board.newFallingTetrimino(nextTetrimino);
-                next = type;
-            }
-            evaluation += findBestMoves(
-                    new GameState2(
-                            curGameState.board,
-                            cur,
-                            next,
-                            curGameState.score,
-                            curGameState.combo,
-                            curGameState.round,
-                            curGameState.prevStateEval,
-                            curGameState.skipCnt, curGameState.possibleGarbage,
-                            curGameState.linesCleared
-                    ),
-                    false,
-                    false).getEvaluation();
+            evaluation += typeEvaluation(searchState, nextTetrimino, type, limits, chanceLevel + 1);
         }
         evaluation /= TetriminoType.ALL.length;
         return evaluation;
     }
 
-    private List<TetriminoWithPosition> getAvailableFinalPositions(Board board, TetriminoWithPosition fallingTetrimino, TetriminoWithPosition[][][] bfs) {
+    /**
+     * {@link #expectedEvaluation} that gives up once the average can't get below bestEvaluation. If it doesn't
+     * give up, the per-type values are summed in the usual order, so the result is the same to the bit.
+     *
+     * @return the expected evaluation, or a lower bound of it above bestEvaluation
+     */
+    private double boundedExpectedEvaluation(SearchState searchState, TetriminoType nextTetrimino, SearchLimits limits, int chanceLevel, double bestEvaluation) {
+        if (searchState.lost) {
+            return searchState.evaluation;
+        }
+        GameState2 state = searchState.gameState;
+        double lowerBound = evaluator.getLowerBound(
+                state.prevStateEval,
+                state.score,
+                state.combo,
+                state.skipCnt,
+                state.board.getMaxColumnHeight(),
+                state.round,
+                nextTetrimino == null ? 1 : 2
+        );
+        if (lowerBound == Double.NEGATIVE_INFINITY) {
+            return expectedEvaluation(searchState, nextTetrimino, limits, chanceLevel);
+        }
+        int typesCnt = TetriminoType.ALL.length;
+        TetriminoType[] order = getProbeOrder();
+        double[] typeEvaluations = new double[typesCnt];
+        double sum = 0;
+        double slack = 1e-9 * max(1, abs(bestEvaluation));
+        for (int i = 0; i < typesCnt; i++) {
+            TetriminoType type = order[i];
+            typeEvaluations[type.ordinal()] = typeEvaluation(searchState, nextTetrimino, type, limits, chanceLevel + 1);
+            sum += typeEvaluations[type.ordinal()];
+            double bound = (sum + (typesCnt - 1 - i) * lowerBound) / typesCnt;
+            if (i < typesCnt - 1 && bound > bestEvaluation + slack) {
+                prunedTypeCnt.add(typesCnt - 1 - i);
+                return bound;
+            }
+        }
+        double evaluation = 0;
+        for (TetriminoType type : TetriminoType.ALL) {
+            evaluation += typeEvaluations[type.ordinal()];
+        }
+        evaluation /= typesCnt;
+        for (int t = 0; t < typesCnt; t++) {
+            if (typeEvaluations[t] > evaluation) {
+                typeAboveAverageCnts[t]++;
+            }
+        }
+        return evaluation;
+    }
+
+    /**
+     * @return piece types by how often they were worse than the average of a finished bounded chance node, most
+     * often first. Insertion sort keeps ties in type order.
+     */
+    private TetriminoType[] getProbeOrder() {
+        TetriminoType[] r = TetriminoType.ALL.clone();
+        for (int i = 1; i < r.length; i++) {
+            TetriminoType type = r[i];
+            int j = i;
+            for (; j > 0 && typeAboveAverageCnts[r[j - 1].ordinal()] < typeAboveAverageCnts[type.ordinal()]; j--) {
+                r[j] = r[j - 1];
+            }
+            r[j] = type;
+        }
+        return r;
+    }
+
+    /**
+     * Same values as {@link #expectedEvaluation} for the first cnt states, every (state, type) search is a task.
+     * The per-type results are summed in the sequential order.
+     */
+    private double[] expectedEvaluationsParallel(List<SearchState> searchStates, int cnt, TetriminoType nextTetrimino, SearchLimits limits, int chanceLevel) {
+        int typesCnt = TetriminoType.ALL.length;
+        double[][] typeEvaluations = new double[cnt][typesCnt];
+        forEachParallel(cnt * typesCnt, task -> {
+            SearchState searchState = searchStates.get(task / typesCnt);
+            if (!searchState.lost) {
+                typeEvaluations[task / typesCnt][task % typesCnt] = typeEvaluation(searchState, nextTetrimino, TetriminoType.ALL[task % typesCnt], limits, chanceLevel + 1);
+            }
+        });
+        double[] r = new double[cnt];
+        for (int i = 0; i < cnt; i++) {
+            SearchState searchState = searchStates.get(i);
+            if (searchState.lost) {
+                r[i] = searchState.evaluation;
+                continue;
+            }
+            double evaluation = 0;
+            for (int t = 0; t < typesCnt; t++) {
+                evaluation += typeEvaluations[i][t];
+            }
+            evaluation /= typesCnt;
+            r[i] = evaluation;
+        }
+        return r;
+    }
+
+    private double typeEvaluation(SearchState searchState, TetriminoType nextTetrimino, TetriminoType type, SearchLimits limits, int chanceLevel) {
+        GameState2 curGameState = searchState.gameState;
+
+        TetriminoWithPosition cur;
+        TetriminoType next;
+        if (nextTetrimino == null) {
+            cur = curGameState.board.newFallingTetrimino(type);
+            next = null;
+        } else {
+            cur = curGameState.board.newFallingTetrimino(nextTetrimino);
+            next = type;
+        }
+        long start = searchState.typeSearches != null ? clock.getAsLong() : 0;
+        MovesWithEvaluation r = findBestMoves(
+                new GameState2(
+                        curGameState.board,
+                        cur,
+                        next,
+                        curGameState.score,
+                        curGameState.combo,
+                        curGameState.round,
+                        curGameState.prevStateEval,
+                        curGameState.skipCnt, curGameState.possibleGarbage,
+                        curGameState.linesCleared
+                ),
+                false,
+                limits,
+                chanceLevel);
+        if (searchState.typeSearches != null && r.getMoves() != null) {
+            searchState.typeSearches[type.ordinal()] = new PredictedSearch(r.getMoves(), limits.getWidth(chanceLevel), clock.getAsLong() - start);
+        }
+        return r.getEvaluation();
+    }
+
+    /**
+     * Runs task(0..n-1) on the pool and waits for all of them. Called from a worker of the pool the tasks are
+     * forked from that worker, so chance nodes below a parallel root fan out too.
+     */
+    private void forEachParallel(int n, IntConsumer task) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> task.accept(index)));
+        }
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+    }
+
+    static List<TetriminoWithPosition> getAvailableFinalPositions(Board board, TetriminoWithPosition fallingTetrimino, TetriminoWithPosition[][][] bfs) {
         List<TetriminoWithPosition> availableFinalPositions = new ArrayList<>();
         TetriminoType type = fallingTetrimino.getTetrimino().getType();
         for (int row = bfs.length - 1; row >= 0; row--) {
@@ -244,11 +1121,66 @@ public class BestMoveFinder {
         return availableFinalPositions;
     }
 
-    static class SearchState implements Comparable<SearchState> {
+    /**
+     * Expectimax widths and deadline of one search. The best widths[level] placements of a node at a chance level
+     * become chance nodes, the nodes below them are at level + 1; placements of a known piece are searched at
+     * NO_EXPANSION.
+     */
+    private static final class SearchLimits {
+        static final int NO_EXPANSION = Integer.MAX_VALUE;
+        final int[] widths;
+        final boolean hasDeadline;
+        final long deadline;
+        private final LongSupplier clock;
+
+        /**
+         * @param clock time of the deadline, null if there is none
+         */
+        SearchLimits(int[] widths, LongSupplier clock, long deadline) {
+            this.widths = widths;
+            this.hasDeadline = clock != null;
+            this.deadline = deadline;
+            this.clock = clock;
+        }
+
+        /**
+         * @return same limits with one more chance level of width 1
+         */
+        SearchLimits extend() {
+            int[] extended = Arrays.copyOf(widths, widths.length + 1);
+            extended[widths.length] = 1;
+            return new SearchLimits(extended, clock, deadline);
+        }
+
+        int getWidth(int level) {
+            return level < widths.length ? widths[level] : 0;
+        }
+
+        void checkDeadline() {
+            if (hasDeadline && clock.getAsLong() - deadline > 0) {
+                throw SearchTimeout.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Unwinds an anytime search at its deadline, or any search on {@link #stop}. Shared and without a stack trace, it is thrown often.
+     */
+    private static final class SearchTimeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final SearchTimeout INSTANCE = new SearchTimeout();
+
+        private SearchTimeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    static class SearchState {
         final double evaluation;
         final GameState2 gameState;
         final TetriminoWithPosition position; // null means move is skip. ugly =(
         final boolean lost;
+        PredictedSearch[] typeSearches; // by type, kept at the root for useSubtreeReuse
 
         SearchState(double evaluation, GameState2 gameState, TetriminoWithPosition position, boolean lost) {
             this.evaluation = evaluation;
@@ -256,10 +1188,24 @@ public class BestMoveFinder {
             this.position = position;
             this.lost = lost;
         }
+    }
+
+    /**
+     * Search of a position below the root's chance node, kept for {@link #useSubtreeReuse}.
+     */
+    private static final class PredictedSearch {
+        final List<Move> moves;
+        final int width;
+        final long nanos;
 
-        @Override
-        public int compareTo(SearchState o) {
-            return Double.compare(evaluation, o.evaluation);
+        /**
+         * @param moves backward, as the search collects them
+         * @param width expectimax width the position was searched with
+         */
+        PredictedSearch(List<Move> moves, int width, long nanos) {
+            this.moves = moves;
+            this.width = width;
+            this.nanos = nanos;
         }
     }
 
@@ -0,0 +1,113 @@
+package tetris.logic;
+
+import tetris.Board;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays batch of boards scored together by {@link Evaluator#evaluateBatch}. Rows of board i
+ * occupy rows[i * height, (i + 1) * height); the scalar inputs and the extracted features are kept in
+ * parallel arrays indexed by i. Reused between calls, so not thread-safe.
+ */
+public class BoardBatch {
+    private static final int INITIAL_CAPACITY = 64;
+
+    final int height;
+    final int width;
+    final BoardFeatures features;
+    int size;
+
+    int[] rows;
+    int[] score;
+    int[] combo;
+    double[] prevStateEval;
+    int[] skipCnt;
+    int[] linesCleared;
+    boolean[] lost;
+    int[] lastRound;
+
+    int[] badCnt;
+    int[] semiBadCnt;
+    int[] flatRate;
+    int[] holeCnt;
+    int[] maxColumnHeight;
+    int[] aboveBadFactor;
+    int[] monotonicRate;
+    int[] iPatternFactor;
+    boolean[] tSpinPattern;
+    boolean[] semiTSpinPattern;
+    double[] heightFactor;
+
+    public BoardBatch(int height, int width) {
+        this.height = height;
+        this.width = width;
+        this.features = new BoardFeatures(height, width);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param lost {@link Evaluator#isLost} of the board, as the scalar evaluation gets it
+     * @return index of the board in the batch
+     */
+    public int add(Board board, int score, int combo, double prevStateEval, int skipCnt, int linesCleared, boolean lost, int lastRound) {
+        if (board.getHeight() != height || board.getWidth() != width) {
+            throw new IllegalArgumentException("board size doesn't match batch");
+        }
+        if (size == this.score.length) {
+            allocate(size * 2);
+        }
+        int i = size++;
+        board.copyRowsTo(rows, i * height);
+        this.score[i] = score;
+        this.combo[i] = combo;
+        this.prevStateEval[i] = prevStateEval;
+        this.skipCnt[i] = skipCnt;
+        this.linesCleared[i] = linesCleared;
+        this.lost[i] = lost;
+        this.lastRound[i] = lastRound;
+        return i;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    private void allocate(int capacity) {
+        rows = rows == null ? new int[capacity * height] : Arrays.copyOf(rows, capacity * height);
+        score = grow(score, capacity);
+        combo = grow(combo, capacity);
+        prevStateEval = prevStateEval == null ? new double[capacity] : Arrays.copyOf(prevStateEval, capacity);
+        skipCnt = grow(skipCnt, capacity);
+        linesCleared = grow(linesCleared, capacity);
+        lost = lost == null ? new boolean[capacity] : Arrays.copyOf(lost, capacity);
+        lastRound = grow(lastRound, capacity);
+
+        badCnt = new int[capacity];
+        semiBadCnt = new int[capacity];
+        flatRate = new int[capacity];
+        holeCnt = new int[capacity];
+        maxColumnHeight = new int[capacity];
+        aboveBadFactor = new int[capacity];
+        monotonicRate = new int[capacity];
+        iPatternFactor = new int[capacity];
+        tSpinPattern = new boolean[capacity];
+        semiTSpinPattern = new boolean[capacity];
+        heightFactor = new double[capacity];
+    }
+
+    private static int[] grow(int[] a, int capacity) {
+        return a == null ? new int[capacity] : Arrays.copyOf(a, capacity);
+    }
+}
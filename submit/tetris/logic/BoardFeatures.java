@@ -0,0 +1,150 @@
+package tetris.logic;
+
+import tetris.Board;
+
+import java.util.Arrays;
+
+/**
+ * Row-word view of one board (standalone or one of the boards of a {@link BoardBatch}) together with the
+ * features {@link Evaluator} extracts from it. Reused between boards, so not thread-safe; evaluators take a
+ * per-thread instance from {@link #scratch}.
+ */
+final class BoardFeatures {
+    private static final ThreadLocal<BoardFeatures> SCRATCH = new ThreadLocal<>();
+
+    private final int height;
+    private final int width;
+    private final int[] topRows;
+    private final int[] heights;
+    private final int[] columnScratch;
+    private int[] rows;
+    private int offset;
+
+    int badCnt;
+    int semiBadCnt;
+    int flatRate;
+    int holeCnt;
+    int maxColumnHeight;
+    int aboveBadFactor;
+    int monotonicRate;
+    int iPatternFactor;
+    boolean tSpinPattern;
+    boolean semiTSpinPattern;
+
+    BoardFeatures(int height, int width) {
+        this.height = height;
+        this.width = width;
+        this.topRows = new int[width];
+        this.heights = ColumnKernels.padded(width);
+        this.columnScratch = new int[width];
+    }
+
+    /**
+     * @return this thread's instance loaded with the board, valid until the next call on the same thread
+     */
+    static BoardFeatures scratch(Board board) {
+        BoardFeatures features = unloadedScratch(board);
+        features.load(board);
+        return features;
+    }
+
+    /**
+     * @return this thread's instance for boards of the board's size, without loading the board
+     */
+    static BoardFeatures unloadedScratch(Board board) {
+        BoardFeatures features = SCRATCH.get();
+        if (features == null || features.height != board.getHeight() || features.width != board.getWidth()) {
+            features = new BoardFeatures(board.getHeight(), board.getWidth());
+            SCRATCH.set(features);
+        }
+        return features;
+    }
+
+    void load(Board board) {
+        if (rows == null || rows.length != height) {
+            rows = new int[height];
+        }
+        board.copyRowsTo(rows, 0);
+        load(rows, 0);
+    }
+
+    void load(int[] rows, int offset) {
+        this.rows = rows;
+        this.offset = offset;
+        for (int col = 0; col < width; col++) {
+            topRows[col] = height;
+        }
+        int seen = 0;
+        for (int row = 0; row < height; row++) {
+            int newCols = rows[offset + row] & ~seen;
+            seen |= newCols;
+            while (newCols != 0) {
+                topRows[Integer.numberOfTrailingZeros(newCols)] = row;
+                newCols &= newCols - 1;
+            }
+        }
+        for (int col = 0; col < width; col++) {
+            heights[col + 1] = height - topRows[col];
+        }
+    }
+
+    boolean get(int row, int col) {
+        return (rows[offset + row] & (1 << col)) != 0;
+    }
+
+    /**
+     * @return cells of the row as bits, bit col is set for a block
+     */
+    int getRow(int row) {
+        return rows[offset + row];
+    }
+
+    int getTopRowInColumn(int col) {
+        return topRows[col];
+    }
+
+    int getColumnHeight(int col) {
+        return height - topRows[col];
+    }
+
+    /**
+     * @return column heights padded for {@link ColumnKernels}
+     */
+    int[] getPaddedHeights() {
+        return heights;
+    }
+
+    /**
+     * @return a zeroed per-column array for a feature to work in, valid until the next call
+     */
+    int[] getColumnScratch() {
+        Arrays.fill(columnScratch, 0);
+        return columnScratch;
+    }
+
+    int getBlocksInRowCnt(int row) {
+        return Integer.bitCount(rows[offset + row]);
+    }
+
+    /**
+     * @return empty cells that have a block somewhere above them
+     */
+    int getCoveredCellsCnt() {
+        int covered = 0;
+        int r = 0;
+        for (int row = 0; row < height; row++) {
+            int cur = rows[offset + row];
+            r += Integer.bitCount(covered & ~cur);
+            covered |= cur;
+        }
+        return r;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,40 @@
+package tetris.logic;
+
+import java.util.Arrays;
+
+/**
+ * Reductions over the column heights of a board. Heights are padded: heights[1..width] are the columns,
+ * heights[0] and at least MAX_LANES cells after the last column are {@link #WALL}, see {@link #padded}.
+ */
+interface ColumnKernels {
+    int WALL = 999;
+    int MAX_LANES = 16;
+
+    int maxColumnHeight(int[] heights, int width);
+
+    int flatRate(int[] heights, int width);
+
+    int holeCnt(int[] heights, int width);
+
+    int monotonicRate(int[] heights, int width);
+
+    static int[] padded(int width) {
+        int[] heights = new int[width + 2 + MAX_LANES];
+        Arrays.fill(heights, WALL);
+        return heights;
+    }
+
+    /**
+     * The Vector API implementation when it is on the classpath and jdk.incubator.vector is available,
+     * otherwise {@link ScalarColumnKernels}. -Dtetris.vector=false forces the scalar one.
+     */
+    static ColumnKernels select() {
+        if (!"false".equals(System.getProperty("tetris.vector"))) {
+            try {
+                return (ColumnKernels) Class.forName("tetris.logic.VectorColumnKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+            }
+        }
+        return new ScalarColumnKernels();
+    }
+}
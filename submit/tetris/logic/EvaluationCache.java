@@ -0,0 +1,210 @@
+package tetris.logic;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size open-addressing cache of the part of the evaluation that is summed before the previous state term
+ * (board features, score and combo), together with the board features summed after it. The terms of skipCnt,
+ * linesCleared and the previous state are added to the cached part, so they aren't in the key; lost states, whose
+ * loss term depends on the round, aren't cached. Score and combo are stored and compared exactly, the board by its
+ * 64-bit {@link tetris.Board#longHashCode}: a wrong hit needs another board with the same hash in the probe window,
+ * about one in 2^62 per lookup.
+ * <p>
+ * A cache made by {@link #ofQuantized} keeps the int static evaluation of {@link QuantizedEvaluator} instead. Integer
+ * sums don't depend on the order, so the whole static part is cached, keyed by score, combo, skipCnt and
+ * linesCleared (only whether it is 0, 1, 2 or more counts). A slot is then 16 bytes instead of 24: the key word and
+ * the fields next to the int value in one long.
+ * <p>
+ * Lock-free: every slot stores the board hash and the fields xor-ed with the value, so a reader seeing a half-written
+ * slot just gets a miss.
+ */
+public class EvaluationCache {
+    static final int NOT_CACHED = 0;
+    static final long MISS = Long.MIN_VALUE;
+    private static final int PROBE_CNT = 4;
+    private static final int VALID = 1 << 31;
+    private static final int SCORE_BITS = 19;
+    private static final int COMBO_BITS = 12;
+    private static final int QUANTIZED_SCORE_BITS = 16;
+    private static final int QUANTIZED_COMBO_BITS = 8;
+    private static final int QUANTIZED_SKIP_CNT_BITS = 5;
+
+    private final long[] keys;
+    private final long[] values;
+    private final long[] fields;
+    private final int mask;
+    private final LongAdder hitCnt = new LongAdder();
+    private final LongAdder missCnt = new LongAdder();
+
+    public EvaluationCache(int capacity) {
+        this(capacity, false);
+    }
+
+    private EvaluationCache(int capacity, boolean quantized) {
+        int size = Integer.highestOneBit(Math.max(capacity, PROBE_CNT) - 1) << 1;
+        keys = new long[size];
+        values = new long[size];
+        fields = quantized ? null : new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return cache for {@link QuantizedEvaluator#getCachedEvaluation}
+     */
+    public static EvaluationCache ofQuantized(int capacity) {
+        return new EvaluationCache(capacity, true);
+    }
+
+    public boolean isQuantized() {
+        return fields == null;
+    }
+
+    /**
+     * @return score and combo packed for {@link #get} and {@link #put}, NOT_CACHED if they don't fit
+     */
+    static int fields(int score, int combo) {
+        if (score < 0 || score >= 1 << SCORE_BITS || combo < 0 || combo >= 1 << COMBO_BITS) {
+            return NOT_CACHED;
+        }
+        return VALID | combo << SCORE_BITS | score;
+    }
+
+    /**
+     * @return score, combo, skipCnt and the linesCleared class packed for {@link #getQuantized} and
+     * {@link #putQuantized}, NOT_CACHED if they don't fit
+     */
+    static int quantizedFields(int score, int combo, int skipCnt, int linesCleared) {
+        if (score < 0 || score >= 1 << QUANTIZED_SCORE_BITS || combo < 0 || combo >= 1 << QUANTIZED_COMBO_BITS
+                || skipCnt < 0 || skipCnt >= 1 << QUANTIZED_SKIP_CNT_BITS || linesCleared < 0) {
+            return NOT_CACHED;
+        }
+        int linesClass = Math.min(linesCleared, 3);
+        return VALID | linesClass << QUANTIZED_SCORE_BITS + QUANTIZED_COMBO_BITS + QUANTIZED_SKIP_CNT_BITS
+                | skipCnt << QUANTIZED_SCORE_BITS + QUANTIZED_COMBO_BITS | combo << QUANTIZED_SCORE_BITS | score;
+    }
+
+    /**
+     * @param tail receives monotonicRate, iPatternFactor and the patterns on a hit
+     * @return cached part of the evaluation or NaN if there is none
+     */
+    double get(long boardHash, int fields, BoardFeatures tail) {
+        int home = (int) boardHash & mask;
+        for (int i = 0; i < PROBE_CNT; i++) {
+            int slot = (home + i) & mask;
+            long value = values[slot];
+            long data = this.fields[slot] ^ value;
+            if ((keys[slot] ^ value) == boardHash && (int) data == fields) {
+                int packedTail = (int) (data >>> 32);
+                tail.monotonicRate = packedTail & 0xFFFF;
+                tail.iPatternFactor = (packedTail >>> 16) & 0xFF;
+                tail.tSpinPattern = (packedTail & 1 << 24) != 0;
+                tail.semiTSpinPattern = (packedTail & 1 << 25) != 0;
+                hitCnt.increment();
+                return Double.longBitsToDouble(value);
+            }
+        }
+        missCnt.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Takes the first empty slot of the probe window, otherwise replaces the home slot. Boards whose features
+     * don't fit aren't stored.
+     */
+    void put(long boardHash, int fields, double head, BoardFeatures tail) {
+        if (tail.monotonicRate >= 1 << 16 || tail.iPatternFactor >= 1 << 8) {
+            return;
+        }
+        int packedTail = tail.monotonicRate | tail.iPatternFactor << 16
+                | (tail.tSpinPattern ? 1 << 24 : 0) | (tail.semiTSpinPattern ? 1 << 25 : 0);
+        int home = (int) boardHash & mask;
+        int victim = home;
+        for (int i = 0; i < PROBE_CNT; i++) {
+            int slot = (home + i) & mask;
+            if (this.fields[slot] == 0 && values[slot] == 0) {
+                victim = slot;
+                break;
+            }
+        }
+        long value = Double.doubleToRawLongBits(head);
+        long data = (long) packedTail << 32 | (fields & 0xFFFFFFFFL);
+        values[victim] = value;
+        keys[victim] = boardHash ^ value;
+        this.fields[victim] = data ^ value;
+    }
+
+    /**
+     * @return cached static evaluation of a quantized cache or MISS if there is none
+     */
+    long getQuantized(long boardHash, int fields) {
+        int home = (int) boardHash & mask;
+        for (int i = 0; i < PROBE_CNT; i++) {
+            int slot = (home + i) & mask;
+            long data = values[slot];
+            if ((keys[slot] ^ data) == boardHash && (int) (data >>> 32) == fields) {
+                hitCnt.increment();
+                return (int) data;
+            }
+        }
+        missCnt.increment();
+        return MISS;
+    }
+
+    /**
+     * Same replacement as {@link #put}.
+     */
+    void putQuantized(long boardHash, int fields, int staticEvaluation) {
+        int home = (int) boardHash & mask;
+        int victim = home;
+        for (int i = 0; i < PROBE_CNT; i++) {
+            int slot = (home + i) & mask;
+            if (keys[slot] == 0 && values[slot] == 0) {
+                victim = slot;
+                break;
+            }
+        }
+        long data = (long) fields << 32 | (staticEvaluation & 0xFFFFFFFFL);
+        values[victim] = data;
+        keys[victim] = boardHash ^ data;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        if (fields != null) {
+            Arrays.fill(fields, 0);
+        }
+        hitCnt.reset();
+        missCnt.reset();
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public long getHitCnt() {
+        return hitCnt.sum();
+    }
+
+    public long getMissCnt() {
+        return missCnt.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCnt();
+        long total = hits + getMissCnt();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationCache{" +
+                "capacity=" + getCapacity() +
+                ", quantized=" + isQuantized() +
+                ", hitCnt=" + getHitCnt() +
+                ", missCnt=" + getMissCnt() +
+                ", hitRate=" + getHitRate() +
+                '}';
+    }
+}
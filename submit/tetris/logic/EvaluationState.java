@@ -95,14 +95,24 @@ public class EvaluationState {
             x += parameterWeight.get(LOW_EFFICIENCY2); // todo generalize?
         }
 
+        return addLossTerm(x, lost, lastRound);
+    }
+
+    /**
+     * Loss term, added last by every evaluator.
+     */
+    static double addLossTerm(double x, boolean lost, int lastRound) {
         if (lost) {
             x += 1e9;
             x -= lastRound * 1e6;
         }
-
         return x;
     }
 
+    public double getEvaluation() {
+        return evaluation;
+    }
+
     @Override
     public String toString() {
         return "EvaluationState{" +
@@ -111,7 +121,7 @@ public class EvaluationState {
                 '}';
     }
 
-    private static double getHeightFactor(int maxColumnHeight, double heightRatioQ, double heightPow) {
+    static double getHeightFactor(int maxColumnHeight, double heightRatioQ, double heightPow) {
         if (heightPow == 0) {
             return 0;
         }
@@ -3,15 +3,76 @@ package tetris.logic;
 import tetris.Board;
 import tetris.Cell;
 
+import java.util.Arrays;
+
 import static java.lang.Math.*;
+import static tetris.logic.EvaluationParameter.*;
 
 public class Evaluator {
+    static final int BAD_CELLS_FEATURE = 1;
+    static final int T_SPIN_FEATURE = 1 << 1;
+    static final int SEMI_T_SPIN_FEATURE = 1 << 2;
+    static final int FLAT_RATE_FEATURE = 1 << 3;
+    static final int HOLE_CNT_FEATURE = 1 << 4;
+    static final int ABOVE_BAD_FEATURE = 1 << 5;
+    static final int MONOTONIC_RATE_FEATURE = 1 << 6;
+    static final int I_PATTERN_FEATURE = 1 << 7;
+    static final int ALL_FEATURES = (1 << 8) - 1;
+    private static final int NEAR_TOP_ROWS = 6;
+    private static final ColumnKernels COLUMN_KERNELS = ColumnKernels.select();
+
     private final ParameterWeights parameterWeight;
+    private final int requiredFeatures;
+    private final double[] heightFactors;
+    private final double badCntWeight;
+    private final double holeCntWeight;
+    private final double semiBadCntWeight;
+    private final double scoreWeight;
+    private final double cellsAboveTopWeight;
+    private final double flatRateWeight;
+    private final double comboWeight;
+    private final double prevStateWeight;
+    private final double skipCntWeight;
+    private final double monotonicRateWeight;
+    private final double iPatternWeight;
+    private final double tSpinPatternWeight;
+    private final double semiTSpinPatternWeight;
+    private final double lowEfficiencyWeight;
+    private final double lowEfficiency2Weight;
 
     public Evaluator(ParameterWeights parameterWeight) {
         this.parameterWeight = parameterWeight;
+        this.requiredFeatures = requiredFeatures(parameterWeight);
+        this.heightFactors = new double[Board.STANDARD_HEIGHT + 1];
+        ParameterWeights w = parameterWeight == null ? ParameterWeights.zero() : parameterWeight;
+        for (int h = 0; h < heightFactors.length; h++) {
+            heightFactors[h] = EvaluationState.getHeightFactor(h, w.get(HEIGHT), w.get(HEIGHT_POW));
+        }
+        badCntWeight = w.get(BAD_CNT);
+        holeCntWeight = w.get(HOLE_CNT);
+        semiBadCntWeight = w.get(SEMI_BAD_CNT);
+        scoreWeight = w.get(SCORE);
+        cellsAboveTopWeight = w.get(CELLS_ABOVE_TOP);
+        flatRateWeight = w.get(FLAT_RATE);
+        comboWeight = w.get(COMBO);
+        prevStateWeight = w.get(PREV_STATE);
+        skipCntWeight = w.get(SKIP_CNT);
+        monotonicRateWeight = w.get(MONOTONIC_RATE);
+        iPatternWeight = w.get(I_PATTERN);
+        tSpinPatternWeight = w.get(T_SPIN_PATTERN);
+        semiTSpinPatternWeight = w.get(SEMI_T_SPIN_PATTERN);
+        lowEfficiencyWeight = w.get(LOW_EFFICIENCY);
+        lowEfficiency2Weight = w.get(LOW_EFFICIENCY2);
     }
 
+    ParameterWeights getParameterWeights() {
+        return parameterWeight;
+    }
+
+    /**
+     * Full breakdown of the evaluation, for tests and diagnostics. The search only needs the score, see
+     * {@link #evaluate}.
+     */
     public EvaluationState getEvaluation(
             Board board,
             int score,
@@ -22,80 +83,397 @@ public class Evaluator {
             boolean lost,
             int lastRound
     ) {
-        Cell tSpinCell = checkTSpinPattern(board);
-        int badCnt = 0;
-        int semiBadCnt = 0;
-        int w = board.getWidth();
-
-        for (int col = 0; col < w; col++) {
-            boolean found = false;
-            for (int row = 0; row < board.getHeight(); row++) {
-                if (board.get(row, col)) {
-                    found = true;
-                } else {
-                    if (found) {
-                        if (tSpinCell != null && tSpinCell.row == row && (tSpinCell.col == col - 1 || tSpinCell.col == col + 1)) {
-                            continue;
-                        }
-                        if (isSemiBad(board, row, col)) {
-                            semiBadCnt++;
-                        } else {
-                            badCnt++;
-                        }
-                    }
-                }
-            }
-        }
-
-        int flatRate = 0;
-        for (int i = 0; i < w - 1; i++) {
-            int diff = abs(board.getTopRowInColumn(i) - board.getTopRowInColumn(i + 1));
-            flatRate += diff;
-        }
-        int holeCnt = 0;
-        for (int i = 0; i < w; i++) {
-            int left = i == 0 ? 999 : board.getColumnHeight(i - 1);
-            int mid = board.getColumnHeight(i);
-            int right = i == board.getWidth() - 1 ? 999 : board.getColumnHeight(i + 1);
-            int holeHeight = min(left, right) - mid;
-            if (holeHeight > 2) {
-                holeCnt += (holeHeight + 1) / 4;
-            }
-        }
-        int maxColumnHeight = 0;
-        for (int i = 0; i < w; i++) {
-            maxColumnHeight = max(maxColumnHeight, board.getColumnHeight(i));
-        }
-        boolean semiTSpinPattern = checkSemiTSpinPattern(board);
-        boolean tSpinPattern = tSpinCell != null;
-
-        int aboveBadFactor = calcAboveBadFactor(board);
-        boolean lostLocal = lost || board.getMaxColumnHeight() == board.getHeight();
-        int monotonicRate = calcMonotonicRate(board);
-        int iPatternFactor = calcIPatternFactor(board);
+        BoardFeatures features = BoardFeatures.scratch(board);
+        extractFeatures(features, ALL_FEATURES);
+        boolean lostLocal = lost || features.maxColumnHeight == features.getHeight();
         return new EvaluationState(
-                badCnt,
-                flatRate,
-                holeCnt,
-                maxColumnHeight,
+                features.badCnt,
+                features.flatRate,
+                features.holeCnt,
+                features.maxColumnHeight,
                 score,
                 combo,
-                aboveBadFactor,
-                semiBadCnt,
+                features.aboveBadFactor,
+                features.semiBadCnt,
                 prevStateEval,
                 skipCnt,
                 linesCleared,
-                monotonicRate,
-                tSpinPattern,
-                semiTSpinPattern,
+                features.monotonicRate,
+                features.tSpinPattern,
+                features.semiTSpinPattern,
                 lostLocal,
                 lastRound,
-                iPatternFactor,
+                features.iPatternFactor,
                 parameterWeight
         );
     }
 
-    private int calcIPatternFactor(Board board) {
+    /**
+     * Same value as getEvaluation(...).evaluation without building the EvaluationState. Whether the state is
+     * lost is {@link #isLost}.
+     */
+    public double evaluate(
+            Board board,
+            int score,
+            int combo,
+            double prevStateEval,
+            int skipCnt,
+            int linesCleared,
+            boolean lost,
+            int lastRound
+    ) {
+        BoardFeatures features = BoardFeatures.scratch(board);
+        extractFeatures(features, requiredFeatures);
+        boolean lostLocal = lost || features.maxColumnHeight == features.getHeight();
+        double head = calcHead(features, score, combo);
+        return calcEvaluation(head, features, score, prevStateEval, skipCnt, linesCleared, lostLocal, lastRound);
+    }
+
+    /**
+     * Scores every board of the batch, same results as {@link #evaluate}. Features are extracted board by
+     * board, the weighting is done in flat loops over the batch arrays that the JIT can vectorize.
+     */
+    public void evaluateBatch(BoardBatch batch, double[] evaluations) {
+        int n = batch.size;
+        BoardFeatures features = batch.features;
+        for (int i = 0; i < n; i++) {
+            features.load(batch.rows, i * batch.height);
+            extractFeatures(features, requiredFeatures);
+            batch.badCnt[i] = features.badCnt;
+            batch.semiBadCnt[i] = features.semiBadCnt;
+            batch.flatRate[i] = features.flatRate;
+            batch.holeCnt[i] = features.holeCnt;
+            batch.maxColumnHeight[i] = features.maxColumnHeight;
+            batch.aboveBadFactor[i] = features.aboveBadFactor;
+            batch.monotonicRate[i] = features.monotonicRate;
+            batch.iPatternFactor[i] = features.iPatternFactor;
+            batch.tSpinPattern[i] = features.tSpinPattern;
+            batch.semiTSpinPattern[i] = features.semiTSpinPattern;
+        }
+        if (parameterWeight == null) {
+            Arrays.fill(evaluations, 0, n, 0);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            batch.heightFactor[i] = getHeightFactor(batch.maxColumnHeight[i]);
+        }
+
+        // same operation order as calcHead and calcEvaluation, so results are bit-identical
+        for (int i = 0; i < n; i++) {
+            double x = 0;
+            x += batch.badCnt[i] * badCntWeight;
+            x += batch.holeCnt[i] * holeCntWeight;
+            x += batch.heightFactor[i];
+            x += batch.semiBadCnt[i] * semiBadCntWeight;
+            x += batch.score[i] * scoreWeight;
+            x += batch.aboveBadFactor[i] * cellsAboveTopWeight;
+            x += batch.flatRate[i] * flatRateWeight;
+            x += batch.combo[i] * comboWeight;
+            x += batch.prevStateEval[i] * prevStateWeight;
+            x += batch.skipCnt[i] * skipCntWeight;
+            x += batch.monotonicRate[i] * monotonicRateWeight;
+            x += batch.iPatternFactor[i] * iPatternWeight;
+            evaluations[i] = x;
+        }
+
+        for (int i = 0; i < n; i++) {
+            double x = evaluations[i];
+            if (batch.tSpinPattern[i]) {
+                x += tSpinPatternWeight;
+            }
+            if (batch.semiTSpinPattern[i]) {
+                x += semiTSpinPatternWeight;
+            }
+            if (batch.linesCleared[i] > 0 && batch.score[i] == 0) {
+                x += lowEfficiencyWeight;
+            }
+            if (batch.linesCleared[i] == 2 && batch.score[i] <= 3) {
+                x += lowEfficiency2Weight;
+            }
+            boolean lost = batch.lost[i] || batch.maxColumnHeight[i] == batch.height;
+            evaluations[i] = EvaluationState.addLossTerm(x, lost, batch.lastRound[i]);
+        }
+    }
+
+    /**
+     * Cheap first-stage score for pre-filtering placements: skyline (height factor and flat rate), covered empty
+     * cells weighted as bad cells, and the score, combo and skip terms.
+     */
+    public double estimate(Board board, int score, int combo, int skipCnt) {
+        if (parameterWeight == null) {
+            return 0;
+        }
+        BoardFeatures features = BoardFeatures.scratch(board);
+        double x = 0;
+        x += features.getCoveredCellsCnt() * badCntWeight;
+        x += getHeightFactor(calcMaxColumnHeight(features));
+        x += calcFlatRate(features) * flatRateWeight;
+        x += score * scoreWeight;
+        x += combo * comboWeight;
+        x += skipCnt * skipCntWeight;
+        return x;
+    }
+
+    /**
+     * Same value as {@link #evaluate}. The cache keeps the part of the sum before the previous state term and the
+     * board features used after it, so the terms are still added in the order of EvaluationState.
+     */
+    public double getCachedEvaluation(
+            EvaluationCache cache,
+            Board board,
+            int score,
+            int combo,
+            double prevStateEval,
+            int skipCnt,
+            int linesCleared,
+            boolean lost,
+            int lastRound
+    ) {
+        int fields = EvaluationCache.fields(score, combo);
+        if (isLost(board, lost) || fields == EvaluationCache.NOT_CACHED) { // loss term depends on lastRound, not worth caching
+            return evaluate(board, score, combo, prevStateEval, skipCnt, linesCleared, lost, lastRound);
+        }
+        long boardHash = board.longHashCode();
+        BoardFeatures features = BoardFeatures.unloadedScratch(board);
+        double head = cache.get(boardHash, fields, features);
+        if (Double.isNaN(head)) {
+            features.load(board);
+            extractFeatures(features, requiredFeatures);
+            head = calcHead(features, score, combo);
+            cache.put(boardHash, fields, head, features);
+        }
+        return calcEvaluation(head, features, score, prevStateEval, skipCnt, linesCleared, false, lastRound);
+    }
+
+    /**
+     * Lower bound of the evaluation of any state reached from the given one by 1 to piecesCnt more moves, whatever
+     * the board: board features count at least 0, the score grows by at most max(18, 10 + combo) per piece,
+     * combo and skipCnt by at most 1, and clearing lines lowers the stack by at most 4 rows per piece.
+     *
+     * @param evaluation evaluation of the given state, the prevStateEval of the next one
+     * @return the bound, -infinity if the weights don't allow one (a negative weight on an unbounded feature)
+     */
+    public double getLowerBound(double evaluation, int score, int combo, int skipCnt, int maxColumnHeight, int round, int piecesCnt) {
+        double prevStateWeight = parameterWeight == null ? -1 : parameterWeight.get(PREV_STATE);
+        if (prevStateWeight < 0 || min(min(badCntWeight, holeCntWeight), min(semiBadCntWeight, cellsAboveTopWeight)) < 0
+                || min(flatRateWeight, monotonicRateWeight) < 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double r = Double.POSITIVE_INFINITY;
+        double prevBound = evaluation;
+        int maxScore = score;
+        for (int pieces = 1; pieces <= piecesCnt; pieces++) {
+            maxScore += max(18, 10 + combo + pieces - 1);
+            int minHeight = max(0, maxColumnHeight - 4 * pieces);
+            double minHeightFactor = Double.POSITIVE_INFINITY;
+            for (int h = minHeight; h < heightFactors.length; h++) {
+                minHeightFactor = min(minHeightFactor, heightFactors[h]);
+            }
+            if (Double.isNaN(minHeightFactor)) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            double x = minHeightFactor;
+            x += min(score * scoreWeight, maxScore * scoreWeight);
+            x += min(0, (combo + pieces) * comboWeight);
+            x += min(0, (skipCnt + pieces) * skipCntWeight);
+            x += min(0, Board.STANDARD_HEIGHT * iPatternWeight);
+            x += min(0, tSpinPatternWeight) + min(0, semiTSpinPatternWeight);
+            x += min(0, lowEfficiencyWeight) + min(0, lowEfficiency2Weight);
+            x += prevBound * prevStateWeight;
+            x += min(0, 1e9 - (round + pieces) * 1e6);
+            r = min(r, x);
+            prevBound = x;
+        }
+        return r;
+    }
+
+    /**
+     * Mirrors EvaluationState.calcEvaluation term by term, up to the previous state term: the part that depends only
+     * on the board, the score and the combo.
+     */
+    private double calcHead(BoardFeatures features, int score, int combo) {
+        if (parameterWeight == null) {
+            return 0;
+        }
+        double x = 0;
+        x += features.badCnt * badCntWeight;
+        x += features.holeCnt * holeCntWeight;
+        x += getHeightFactor(features.maxColumnHeight);
+        x += features.semiBadCnt * semiBadCntWeight;
+        x += score * scoreWeight;
+        x += features.aboveBadFactor * cellsAboveTopWeight;
+        x += features.flatRate * flatRateWeight;
+        x += combo * comboWeight;
+        return x;
+    }
+
+    /**
+     * Adds the rest of the terms to head in the order of EvaluationState.calcEvaluation. Of the features only
+     * monotonicRate, iPatternFactor and the patterns are read.
+     */
+    private double calcEvaluation(double head, BoardFeatures features, int score, double prevStateEval, int skipCnt, int linesCleared, boolean lost, int lastRound) {
+        if (parameterWeight == null) {
+            return 0;
+        }
+        double x = head;
+        x += prevStateEval * prevStateWeight;
+        x += skipCnt * skipCntWeight;
+        x += features.monotonicRate * monotonicRateWeight;
+        x += features.iPatternFactor * iPatternWeight;
+        if (features.tSpinPattern) {
+            x += tSpinPatternWeight;
+        }
+        if (features.semiTSpinPattern) {
+            x += semiTSpinPatternWeight;
+        }
+        if (linesCleared > 0 && score == 0) {
+            x += lowEfficiencyWeight;
+        }
+        if (linesCleared == 2 && score <= 3) {
+            x += lowEfficiency2Weight;
+        }
+        return EvaluationState.addLossTerm(x, lost, lastRound);
+    }
+
+    private double getHeightFactor(int maxColumnHeight) {
+        if (maxColumnHeight < heightFactors.length) {
+            return heightFactors[maxColumnHeight];
+        }
+        return EvaluationState.getHeightFactor(maxColumnHeight, parameterWeight.get(HEIGHT), parameterWeight.get(HEIGHT_POW));
+    }
+
+    /**
+     * Features that have zero weight in the parameter set aren't computed by the score-only paths.
+     */
+    static int requiredFeatures(ParameterWeights parameterWeight) {
+        if (parameterWeight == null) {
+            return ALL_FEATURES;
+        }
+        int r = 0;
+        if (parameterWeight.get(BAD_CNT) != 0 || parameterWeight.get(SEMI_BAD_CNT) != 0) {
+            r |= BAD_CELLS_FEATURE;
+        }
+        if (parameterWeight.get(T_SPIN_PATTERN) != 0) {
+            r |= T_SPIN_FEATURE;
+        }
+        if (parameterWeight.get(SEMI_T_SPIN_PATTERN) != 0) {
+            r |= SEMI_T_SPIN_FEATURE;
+        }
+        if (parameterWeight.get(FLAT_RATE) != 0) {
+            r |= FLAT_RATE_FEATURE;
+        }
+        if (parameterWeight.get(HOLE_CNT) != 0) {
+            r |= HOLE_CNT_FEATURE;
+        }
+        if (parameterWeight.get(CELLS_ABOVE_TOP) != 0) {
+            r |= ABOVE_BAD_FEATURE;
+        }
+        if (parameterWeight.get(MONOTONIC_RATE) != 0) {
+            r |= MONOTONIC_RATE_FEATURE;
+        }
+        if (parameterWeight.get(I_PATTERN) != 0) {
+            r |= I_PATTERN_FEATURE;
+        }
+        return r;
+    }
+
+    /**
+     * Skipped features are left at 0, maxColumnHeight is always computed because it decides the loss.
+     */
+    void extractFeatures(BoardFeatures board, int features) {
+        Cell tSpinCell = (features & (BAD_CELLS_FEATURE | T_SPIN_FEATURE)) != 0 ? checkTSpinPattern(board) : null;
+        board.tSpinPattern = tSpinCell != null;
+        if ((features & BAD_CELLS_FEATURE) != 0) {
+            countBadCells(board, tSpinCell);
+        } else {
+            board.badCnt = 0;
+            board.semiBadCnt = 0;
+        }
+        board.flatRate = (features & FLAT_RATE_FEATURE) != 0 ? calcFlatRate(board) : 0;
+        board.holeCnt = (features & HOLE_CNT_FEATURE) != 0 ? calcHoleCnt(board) : 0;
+        board.maxColumnHeight = calcMaxColumnHeight(board);
+        board.semiTSpinPattern = (features & SEMI_T_SPIN_FEATURE) != 0 && checkSemiTSpinPattern(board);
+        board.aboveBadFactor = (features & ABOVE_BAD_FEATURE) != 0 ? calcAboveBadFactor(board) : 0;
+        board.monotonicRate = (features & MONOTONIC_RATE_FEATURE) != 0 ? calcMonotonicRate(board) : 0;
+        board.iPatternFactor = (features & I_PATTERN_FEATURE) != 0 ? calcIPatternFactor(board) : 0;
+    }
+
+    /**
+     * Bad cells are empty cells with a block somewhere above them, counted row by row as bits of
+     * covered & ~row. A covered cell is semi-bad if the two columns on one side of it (not at the wall) are still
+     * free at its row.
+     */
+    private void countBadCells(BoardFeatures board, Cell tSpinCell) {
+        int width = board.getWidth();
+        int full = (1 << width) - 1;
+        int leftSemiCols = full & ~7; // col >= 3
+        int rightSemiCols = (1 << (width - 3)) - 1; // col <= width - 4
+        int badCnt = 0;
+        int semiBadCnt = 0;
+        int covered = 0;
+        for (int row = 0; row < board.getHeight(); row++) {
+            int cur = board.getRow(row);
+            int candidates = covered & ~cur;
+            covered |= cur;
+            if (candidates == 0) {
+                continue;
+            }
+            if (tSpinCell != null && tSpinCell.row == row) {
+                candidates &= ~((1 << (tSpinCell.col - 1)) | (1 << (tSpinCell.col + 1)));
+            }
+            int free = full & ~covered;
+            int semi = ((free << 1) & (free << 2) & leftSemiCols) | ((free >>> 1) & (free >>> 2) & rightSemiCols);
+            semiBadCnt += Integer.bitCount(candidates & semi);
+            badCnt += Integer.bitCount(candidates & ~semi);
+        }
+        board.badCnt = badCnt;
+        board.semiBadCnt = semiBadCnt;
+    }
+
+    private int calcFlatRate(BoardFeatures board) {
+        return COLUMN_KERNELS.flatRate(board.getPaddedHeights(), board.getWidth());
+    }
+
+    private int calcHoleCnt(BoardFeatures board) {
+        return COLUMN_KERNELS.holeCnt(board.getPaddedHeights(), board.getWidth());
+    }
+
+    private int calcMaxColumnHeight(BoardFeatures board) {
+        return COLUMN_KERNELS.maxColumnHeight(board.getPaddedHeights(), board.getWidth());
+    }
+
+    public static boolean isLost(Board board, boolean lost) {
+        return lost || board.getMaxColumnHeight() == board.getHeight();
+    }
+
+    /**
+     * Cheap check for boards the search horizon misjudges most: a T-spin slot, a row one piece could clear (its
+     * empty cells are a run of at most 4 with nothing above them) or a stack within NEAR_TOP_ROWS of the top.
+     */
+    boolean isVolatile(Board board) {
+        BoardFeatures features = BoardFeatures.scratch(board);
+        int height = features.getHeight();
+        int width = features.getWidth();
+        if (height - calcMaxColumnHeight(features) <= NEAR_TOP_ROWS || checkTSpinPattern(features) != null) {
+            return true;
+        }
+        int full = (1 << width) - 1;
+        int covered = 0;
+        for (int row = 0; row < height; row++) {
+            int cur = features.getRow(row);
+            int empty = full & ~cur;
+            if (cur != 0 && empty != 0 && (empty & covered) == 0 && Integer.bitCount(empty) <= 4) {
+                int run = empty >>> Integer.numberOfTrailingZeros(empty);
+                if ((run & (run + 1)) == 0) {
+                    return true;
+                }
+            }
+            covered |= cur;
+        }
+        return false;
+    }
+
+    private int calcIPatternFactor(BoardFeatures board) {
         int minH = Integer.MAX_VALUE;
         for (int col = 0; col < board.getWidth(); col++) {
             int h = board.getColumnHeight(col);
@@ -113,47 +491,37 @@ public class Evaluator {
         return r;
     }
 
-    private int calcMonotonicRate(Board board) {
-        int r = 0;
-        for (int col = 0; col <= board.getWidth() / 2 - 2; col++) {
-            int h1 = board.getColumnHeight(col);
-            int h2 = board.getColumnHeight(col + 1);
-            if (h1 < h2) {
-                r += h2 - h1;
-            }
-        }
-        for (int col = board.getWidth() / 2; col <= board.getWidth() - 2; col++) {
-            int h1 = board.getColumnHeight(col);
-            int h2 = board.getColumnHeight(col + 1);
-            if (h2 < h1) {
-                r += h1 - h2;
-            }
-        }
-        return r;
+    private int calcMonotonicRate(BoardFeatures board) {
+        return COLUMN_KERNELS.monotonicRate(board.getPaddedHeights(), board.getWidth());
     }
 
-    private int calcAboveBadFactor(Board board) {
-        int[][] aboveBadFactor = new int[board.getHeight()][board.getWidth()];
+    /**
+     * A filled cell weighs one more than the heaviest of the cell above it and the covered empty cells of its
+     * row, every covered empty cell adds the weight of the cell above it. Row 0 weighs nothing. The weights of
+     * the previous row are kept per column, the cells of a row are visited through their bits.
+     */
+    private int calcAboveBadFactor(BoardFeatures board) {
+        int[] factors = board.getColumnScratch();
         int r = 0;
+        int covered = board.getRow(0);
         for (int row = 1; row < board.getHeight(); row++) {
+            int cur = board.getRow(row);
             int rowEmptyMax = 0;
-            for (int col = 0; col < board.getWidth(); col++) {
-                if (!board.get(row, col)) { // empty
-                    aboveBadFactor[row][col] = aboveBadFactor[row - 1][col];
-                    r += aboveBadFactor[row][col];
-                    rowEmptyMax = max(rowEmptyMax, aboveBadFactor[row][col]);
-                }
+            for (int empty = covered & ~cur; empty != 0; empty &= empty - 1) {
+                int factor = factors[Integer.numberOfTrailingZeros(empty)];
+                r += factor;
+                rowEmptyMax = max(rowEmptyMax, factor);
             }
-            for (int col = 0; col < board.getWidth(); col++) {
-                if (board.get(row, col)) {
-                    aboveBadFactor[row][col] = max(rowEmptyMax, aboveBadFactor[row - 1][col]) + 1;
-                }
+            for (int filled = cur; filled != 0; filled &= filled - 1) {
+                int col = Integer.numberOfTrailingZeros(filled);
+                factors[col] = max(rowEmptyMax, factors[col]) + 1;
             }
+            covered |= cur;
         }
         return r;
     }
 
-    private boolean checkSemiTSpinPattern(Board board) {
+    private boolean checkSemiTSpinPattern(BoardFeatures board) {
         for (int leftCol = 0; leftCol + 3 - 1 < board.getWidth(); leftCol++) {
             int leftTop = board.getTopRowInColumn(leftCol);
             if (leftTop < 3) {
@@ -181,46 +549,27 @@ public class Evaluator {
         return false;
     }
 
-    private boolean existsBadInRow(Board board, int row) {
-        for (int col = 0; col < board.getWidth(); col++) {
-            if (bad(board, row, col)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean bad(Board board, int row, int col) {
-        if (board.get(row, col)) {
-            return false;
-        }
-        boolean leftWall;
-        boolean rightWall;
-        if (col == 0) {
-            leftWall = true;
-        } else {
-            leftWall = board.getTopRowInColumn(col - 1) < row - 1;
-        }
-        if (col == board.getWidth() - 1) {
-            rightWall = true;
-        } else {
-            rightWall = board.getTopRowInColumn(col + 1) < row - 1;
-        }
-        if (leftWall && rightWall) {
-            return true;
-        }
-        for (int r = row - 1; r >= 0; r--) {
-            if (board.get(r, col)) {
-                return true;
-            }
+    /**
+     * A bad cell is empty and either covered or walled on both sides by columns at least two cells higher.
+     */
+    private boolean existsBadInRow(BoardFeatures board, int row) {
+        int width = board.getWidth();
+        int full = (1 << width) - 1;
+        int coveredAbovePrev = 0; // rows 0..row - 2
+        for (int r = 0; r < row - 1; r++) {
+            coveredAbovePrev |= board.getRow(r);
         }
-        return false;
+        int coveredAbove = row > 0 ? coveredAbovePrev | board.getRow(row - 1) : 0;
+        int leftWall = (coveredAbovePrev << 1) | 1;
+        int rightWall = (coveredAbovePrev >>> 1) | (1 << (width - 1));
+        int empty = full & ~board.getRow(row);
+        return (empty & ((leftWall & rightWall) | coveredAbove)) != 0;
     }
 
     /**
      * @return center of TSpin pattern
      */
-    private Cell checkTSpinPattern(Board board) {
+    private Cell checkTSpinPattern(BoardFeatures board) {
         for (int leftCol = 0; leftCol + 3 - 1 < board.getWidth(); leftCol++) {
             int midTop = board.getTopRowInColumn(leftCol + 1);
             int leftTop = board.getTopRowInColumn(leftCol);
@@ -235,7 +584,7 @@ public class Evaluator {
         return null;
     }
 
-    private boolean checkTSpinPatternLeft(Board board, int leftCol, int midTop, int leftTop) {
+    private boolean checkTSpinPatternLeft(BoardFeatures board, int leftCol, int midTop, int leftTop) {
         if (leftTop < 3) {
             return false;
         }
@@ -246,7 +595,7 @@ public class Evaluator {
                 board.getBlocksInRowCnt(leftTop) == board.getWidth() - 1;
     }
 
-    private boolean checkTSpinPatternRight(Board board, int leftCol, int midTop, int rightTop) {
+    private boolean checkTSpinPatternRight(BoardFeatures board, int leftCol, int midTop, int rightTop) {
         if (rightTop < 3) {
             return false;
         }
@@ -256,14 +605,4 @@ public class Evaluator {
                 board.getBlocksInRowCnt(rightTop - 1) == board.getWidth() - 3 &&
                 board.getBlocksInRowCnt(rightTop) == board.getWidth() - 1;
     }
-
-    private boolean isSemiBad(Board board, int row, int col) {
-        if (col >= 3 && board.getTopRowInColumn(col - 1) > row && board.getTopRowInColumn(col - 2) > row) {
-            return true;
-        }
-        if (col <= board.getWidth() - 4 && board.getTopRowInColumn(col + 1) > row && board.getTopRowInColumn(col + 2) > row) {
-            return true;
-        }
-        return false;
-    }
 }
\ No newline at end of file
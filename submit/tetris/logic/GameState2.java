@@ -7,18 +7,31 @@ import tetris.TetriminoWithPosition;
 import java.util.List;
 
 public class GameState2 {
-    final Board board;
-    final TetriminoType nextTetrimino;
-    final TetriminoWithPosition fallingTetrimino;
-    final int score;
-    final int combo;
-    final int round;
-    final int skipCnt;
-    final List<Integer> possibleGarbage;
-    final double prevStateEval;
-    final int linesCleared;
+    Board board;
+    TetriminoType nextTetrimino;
+    TetriminoWithPosition fallingTetrimino;
+    int score;
+    int combo;
+    int round;
+    int skipCnt;
+    List<Integer> possibleGarbage;
+    double prevStateEval;
+    int linesCleared;
 
     public GameState2(Board board, TetriminoWithPosition fallingTetrimino, TetriminoType nextTetrimino, int score, int combo, int round, double prevStateEval, int skipCnt, List<Integer> possibleGarbage, int linesCleared) {
+        set(board, fallingTetrimino, nextTetrimino, score, combo, round, prevStateEval, skipCnt, possibleGarbage, linesCleared);
+    }
+
+    /**
+     * Record for {@link #set} to fill, see {@link NodeArena}.
+     */
+    GameState2() {
+    }
+
+    /**
+     * @return this, with the values of the constructor of the same parameters
+     */
+    GameState2 set(Board board, TetriminoWithPosition fallingTetrimino, TetriminoType nextTetrimino, int score, int combo, int round, double prevStateEval, int skipCnt, List<Integer> possibleGarbage, int linesCleared) {
         this.board = board;
         this.nextTetrimino = nextTetrimino;
         this.fallingTetrimino = fallingTetrimino;
@@ -29,5 +42,13 @@ public class GameState2 {
         this.possibleGarbage = possibleGarbage;
         this.prevStateEval = prevStateEval;
         this.linesCleared = linesCleared;
+        return this;
+    }
+
+    /**
+     * @return copy with a board of its own, for a state that has to outlive the arena it is kept in
+     */
+    GameState2 copy() {
+        return new GameState2(new Board(board), fallingTetrimino, nextTetrimino, score, combo, round, prevStateEval, skipCnt, possibleGarbage, linesCleared);
     }
 }
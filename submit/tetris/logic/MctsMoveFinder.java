@@ -0,0 +1,408 @@
+package tetris.logic;
+
+import tetris.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tetris.Move.*;
+import static tetris.TetriminoType.*;
+
+/**
+ * Monte Carlo tree search. A decision node knows the falling and the next tetrimino, its edges are the moves
+ * (children generated like in {@link BestMoveFinder}) and below every edge is a chance node over the tetrimino after
+ * the next one, sampled uniformly. Edges are selected by PUCT with a prior from the evaluations of the children; a
+ * new edge is scored by a greedy rollout of ROLLOUT_DEPTH pieces that only tries straight drops found with row
+ * bitmasks. Rewards are in [0, 1]: a logistic function of the final evaluation around the best root child, 0 for
+ * a loss.
+ * <p>
+ * Anytime: stops after iterationsPerMove iterations or at the deadline, and the most visited root move is always
+ * ready. Several threads search the same tree; an edge being searched counts as a lost visit (virtual loss) so
+ * the threads spread out. The subtree of the chosen move is kept and becomes the next root when the next state is
+ * in it.
+ */
+public class MctsMoveFinder implements MoveFinder {
+    private static final double EXPLORATION = 1.5;
+    private static final double FIRST_PLAY_VALUE = 0.5;
+    private static final double PRIOR_TEMPERATURE = 10;
+    private static final double REWARD_TEMPERATURE = 10;
+    private static final int ROLLOUT_DEPTH = 3;
+    private static final int[][][] SHAPE_ROWS = calcShapeRows();
+
+    private final Evaluator evaluator;
+    private final long iterationsPerMove;
+    private ForkJoinPool pool;
+    private int threadsCnt = 1;
+    private DecisionNode root;
+    private Edge chosenEdge;
+    private long searchCnt;
+    private volatile long lastIterationsCnt;
+    private volatile long lastReusedVisitsCnt;
+
+    public MctsMoveFinder(ParameterWeights parameterWeights, long iterationsPerMove) {
+        this.evaluator = new Evaluator(parameterWeights);
+        this.iterationsPerMove = iterationsPerMove;
+    }
+
+    /**
+     * Searches with the given number of threads, 1 or less means the calling thread only.
+     */
+    public MctsMoveFinder useThreads(int threadsCnt) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        this.threadsCnt = Math.max(1, threadsCnt);
+        this.pool = threadsCnt > 1 ? new ForkJoinPool(threadsCnt) : null;
+        return this;
+    }
+
+    /**
+     * @return iterations of the last search
+     */
+    public long getLastIterationsCnt() {
+        return lastIterationsCnt;
+    }
+
+    /**
+     * @return visits the last search inherited from the tree of the previous one, 0 if it wasn't reused
+     */
+    public long getLastReusedVisitsCnt() {
+        return lastReusedVisitsCnt;
+    }
+
+    @Override
+    public List<Move> findBestMoves(GameState gameState) {
+        return search(gameState, iterationsPerMove, false, 0);
+    }
+
+    /**
+     * Searches until the deadline, in {@link System#nanoTime()} terms.
+     */
+    public List<Move> findBestMoves(GameState gameState, long deadline) {
+        return search(gameState, Long.MAX_VALUE, true, deadline);
+    }
+
+    private List<Move> search(GameState gameState, long maxIterationsCnt, boolean hasDeadline, long deadline) {
+        GameState2 state = BestMoveFinder.toGameState2(gameState);
+        if (state.board.collides(state.fallingTetrimino)) {
+            root = null;
+            chosenEdge = null;
+            return new ArrayList<>();
+        }
+        DecisionNode reused = findReusableRoot(state);
+        lastReusedVisitsCnt = reused == null ? 0 : reused.getVisitsCnt();
+        root = reused != null ? reused : new DecisionNode(state);
+        Edge[] edges = root.getEdges();
+        if (edges.length == 0) {
+            chosenEdge = null;
+            return new ArrayList<>();
+        }
+        double base = Double.POSITIVE_INFINITY;
+        for (Edge edge : edges) {
+            base = Math.min(base, edge.child.evaluation);
+        }
+
+        DecisionNode searchRoot = root;
+        double rewardBase = base;
+        AtomicLong startedCnt = new AtomicLong();
+        AtomicLong finishedCnt = new AtomicLong();
+        long seed = searchCnt++ * threadsCnt;
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threadsCnt; i++) {
+            Random rnd = new Random(seed + i);
+            workers.add(ForkJoinTask.adapt(() -> {
+                while (startedCnt.getAndIncrement() < maxIterationsCnt && !(hasDeadline && System.nanoTime() - deadline > 0)) {
+                    iterate(searchRoot, rewardBase, rnd);
+                    finishedCnt.incrementAndGet();
+                }
+            }));
+        }
+        if (pool == null) {
+            workers.get(0).invoke();
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(workers);
+            }));
+        }
+        lastIterationsCnt = finishedCnt.get();
+
+        Edge best = null;
+        for (Edge edge : edges) {
+            if (best == null || edge.visitsCnt > best.visitsCnt
+                    || edge.visitsCnt == best.visitsCnt && edge.child.evaluation < best.child.evaluation) {
+                best = edge;
+            }
+        }
+        chosenEdge = best;
+        if (best.child.position == null) {
+            return new ArrayList<>(Collections.singletonList(SKIP));
+        }
+        TetriminoWithPosition fallingTetrimino = root.state.fallingTetrimino;
+        return BestMoveFinder.toForwardMoves(PathFinder.findMoves(fallingTetrimino, PathFinder.bfs(root.state.board, fallingTetrimino), best.child.position));
+    }
+
+    /**
+     * @return node of the previous tree for the state, null if there is none
+     */
+    private DecisionNode findReusableRoot(GameState2 state) {
+        if (chosenEdge == null || state.nextTetrimino == null) {
+            return null;
+        }
+        DecisionNode candidate = chosenEdge.getExistingChild(state.nextTetrimino);
+        if (candidate == null) {
+            return null;
+        }
+        GameState2 s = candidate.state;
+        boolean same = s.board.equals(state.board)
+                && s.fallingTetrimino.equals(state.fallingTetrimino)
+                && s.nextTetrimino == state.nextTetrimino
+                && s.combo == state.combo
+                && s.round == state.round
+                && s.skipCnt == state.skipCnt
+                && s.possibleGarbage.equals(state.possibleGarbage);
+        return same ? candidate : null;
+    }
+
+    private void iterate(DecisionNode root, double base, Random rnd) {
+        List<DecisionNode> nodes = new ArrayList<>();
+        List<Edge> edges = new ArrayList<>();
+        boolean[] firstVisit = new boolean[1];
+        DecisionNode node = root;
+        double reward;
+        while (true) {
+            if (node.getEdges().length == 0) {
+                reward = 0;
+                break;
+            }
+            Edge edge = node.select(firstVisit);
+            nodes.add(node);
+            edges.add(edge);
+            if (edge.child.lost) {
+                reward = 0;
+                break;
+            }
+            if (firstVisit[0]) {
+                reward = rollout(edge.child.state, node.state.nextTetrimino, base, rnd);
+                break;
+            }
+            node = edge.getChild(node.state.nextTetrimino, ALL[rnd.nextInt(ALL.length)]);
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).update(edges.get(i), reward);
+        }
+    }
+
+    /**
+     * Greedy playout: every piece goes to the straight drop with the best evaluation.
+     *
+     * @param next the first piece, random if null
+     */
+    private double rollout(GameState2 state, TetriminoType next, double base, Random rnd) {
+        int[] rows = new int[state.board.getHeight()];
+        for (int ply = 0; ply < ROLLOUT_DEPTH; ply++) {
+            TetriminoType type = ply == 0 && next != null ? next : ALL[rnd.nextInt(ALL.length)];
+            state.board.copyRowsTo(rows, 0);
+            SearchChild best = null;
+            for (TetriminoWithPosition position : getDropPositions(rows, state.board.getWidth(), type)) {
+                DropResult dropResult = state.board.drop(position, DROP, state.combo, state.round);
+                if (dropResult == null) {
+                    continue;
+                }
+                SearchChild child = SearchChild.of(evaluator, state, dropResult, 0, position);
+                if (best == null || child.evaluation < best.evaluation) {
+                    best = child;
+                }
+            }
+            if (best == null || best.lost) {
+                return 0;
+            }
+            state = best.state;
+        }
+        return 1 / (1 + Math.exp((state.prevStateEval - base) / REWARD_TEMPERATURE));
+    }
+
+    /**
+     * Final positions of the tetrimino rotated at the top and dropped straight down, without tucks and spins.
+     */
+    private static List<TetriminoWithPosition> getDropPositions(int[] rows, int width, TetriminoType type) {
+        List<TetriminoWithPosition> r = new ArrayList<>();
+        int orientationsCnt = type == I || type == S || type == Z ? 2 : Tetrimino.of(type).getOrientationsCnt();
+        for (int orientation = 0; orientation < orientationsCnt; orientation++) {
+            Tetrimino tetrimino = Tetrimino.of(type, orientation);
+            int[] shape = SHAPE_ROWS[type.ordinal()][orientation];
+            for (int leftCol = 0; leftCol + tetrimino.getWidth() <= width; leftCol++) {
+                if (collides(rows, shape, 0, leftCol)) {
+                    continue;
+                }
+                int topRow = 0;
+                while (!collides(rows, shape, topRow + 1, leftCol)) {
+                    topRow++;
+                }
+                r.add(new TetriminoWithPosition(topRow, leftCol, tetrimino));
+            }
+        }
+        return r;
+    }
+
+    private static boolean collides(int[] rows, int[] shape, int topRow, int leftCol) {
+        if (topRow + shape.length > rows.length) {
+            return true;
+        }
+        for (int row = 0; row < shape.length; row++) {
+            if ((rows[topRow + row] & shape[row] << leftCol) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[][][] calcShapeRows() {
+        int[][][] r = new int[ALL.length][][];
+        for (TetriminoType type : ALL) {
+            int orientationsCnt = Tetrimino.of(type).getOrientationsCnt();
+            r[type.ordinal()] = new int[orientationsCnt][];
+            for (int orientation = 0; orientation < orientationsCnt; orientation++) {
+                Tetrimino tetrimino = Tetrimino.of(type, orientation);
+                int[] shape = new int[tetrimino.getHeight()];
+                for (int row = 0; row < tetrimino.getHeight(); row++) {
+                    for (int col = 0; col < tetrimino.getWidth(); col++) {
+                        if (tetrimino.get(row, col)) {
+                            shape[row] |= 1 << col;
+                        }
+                    }
+                }
+                r[type.ordinal()][orientation] = shape;
+            }
+        }
+        return r;
+    }
+
+    private final class DecisionNode {
+        final GameState2 state;
+        private Edge[] edges;
+
+        DecisionNode(GameState2 state) {
+            this.state = state;
+        }
+
+        /**
+         * @return the moves, none if the falling tetrimino collides
+         */
+        synchronized Edge[] getEdges() {
+            if (edges == null) {
+                if (state.board.collides(state.fallingTetrimino)) {
+                    edges = new Edge[0];
+                    return edges;
+                }
+                List<SearchChild> children = SearchChild.generate(evaluator, state, state.fallingTetrimino, PathFinder.bfs(state.board, state.fallingTetrimino));
+                double minEvaluation = Double.POSITIVE_INFINITY;
+                for (SearchChild child : children) {
+                    minEvaluation = Math.min(minEvaluation, child.evaluation);
+                }
+                double[] weights = new double[children.size()];
+                double weightSum = 0;
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] = Math.exp(-(children.get(i).evaluation - minEvaluation) / PRIOR_TEMPERATURE);
+                    weightSum += weights[i];
+                }
+                edges = new Edge[children.size()];
+                for (int i = 0; i < edges.length; i++) {
+                    edges[i] = new Edge(children.get(i), weights[i] / weightSum);
+                }
+            }
+            return edges;
+        }
+
+        /**
+         * Picks the edge with the best PUCT score and adds a virtual loss to it.
+         *
+         * @param firstVisit receives whether nobody has visited the edge yet
+         */
+        synchronized Edge select(boolean[] firstVisit) {
+            int total = 0;
+            for (Edge edge : edges) {
+                total += edge.visitsCnt + edge.virtualLossCnt;
+            }
+            double sqrtTotal = Math.sqrt(total + 1);
+            Edge best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (Edge edge : edges) {
+                int n = edge.visitsCnt + edge.virtualLossCnt;
+                double value = n == 0 ? FIRST_PLAY_VALUE : edge.rewardSum / n;
+                double score = value + EXPLORATION * edge.prior * sqrtTotal / (1 + n);
+                if (score > bestScore) {
+                    best = edge;
+                    bestScore = score;
+                }
+            }
+            firstVisit[0] = best.visitsCnt + best.virtualLossCnt == 0;
+            best.virtualLossCnt++;
+            return best;
+        }
+
+        synchronized void update(Edge edge, double reward) {
+            edge.virtualLossCnt--;
+            edge.visitsCnt++;
+            edge.rewardSum += reward;
+        }
+
+        synchronized long getVisitsCnt() {
+            long r = 0;
+            if (edges != null) {
+                for (Edge edge : edges) {
+                    r += edge.visitsCnt;
+                }
+            }
+            return r;
+        }
+    }
+
+    private final class Edge {
+        final SearchChild child;
+        final double prior;
+        int visitsCnt;
+        int virtualLossCnt;
+        double rewardSum;
+        private DecisionNode[] children;
+
+        Edge(SearchChild child, double prior) {
+            this.child = child;
+            this.prior = prior;
+        }
+
+        /**
+         * @param next   next tetrimino of the parent, falls after this move; if null the sampled type falls
+         * @param sample sampled tetrimino
+         */
+        synchronized DecisionNode getChild(TetriminoType next, TetriminoType sample) {
+            if (children == null) {
+                children = new DecisionNode[ALL.length];
+            }
+            DecisionNode r = children[sample.ordinal()];
+            if (r == null) {
+                GameState2 s = child.state;
+                TetriminoType falling = next != null ? next : sample;
+                r = new DecisionNode(new GameState2(
+                        s.board,
+                        s.board.newFallingTetrimino(falling),
+                        next != null ? sample : null,
+                        s.score,
+                        s.combo,
+                        s.round,
+                        s.prevStateEval,
+                        s.skipCnt,
+                        s.possibleGarbage,
+                        s.linesCleared
+                ));
+                children[sample.ordinal()] = r;
+            }
+            return r;
+        }
+
+        synchronized DecisionNode getExistingChild(TetriminoType sample) {
+            return children == null ? null : children[sample.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package tetris.logic;
+
+import tetris.GameState;
+import tetris.Move;
+
+import java.util.List;
+
+/**
+ * A search engine: chooses the moves for the falling tetrimino.
+ */
+public interface MoveFinder {
+
+    /**
+     * @return moves that bring the falling tetrimino to the chosen position, or a single SKIP
+     */
+    List<Move> findBestMoves(GameState gameState);
+}
@@ -0,0 +1,125 @@
+package tetris.logic;
+
+import tetris.Board;
+
+import java.util.List;
+
+import static tetris.logic.EvaluationParameter.*;
+
+/**
+ * Scores a board for K parameter sets at once: features are extracted a single time and multiplied by a K x F
+ * weight matrix. Every row gives exactly what {@link Evaluator#evaluate} gives for that parameter set.
+ */
+public class MultiWeightEvaluator {
+    /**
+     * Linear features in the order EvaluationState sums them, the height factor goes between HOLE_CNT and
+     * SEMI_BAD_CNT and the previous state between COMBO and SKIP_CNT.
+     */
+    private static final EvaluationParameter[] LINEAR = {
+            BAD_CNT, HOLE_CNT, SEMI_BAD_CNT, SCORE, CELLS_ABOVE_TOP, FLAT_RATE, COMBO, SKIP_CNT, MONOTONIC_RATE, I_PATTERN
+    };
+    private static final EvaluationParameter[] INDICATORS = {
+            T_SPIN_PATTERN, SEMI_T_SPIN_PATTERN, LOW_EFFICIENCY, LOW_EFFICIENCY2
+    };
+    private static final int F = LINEAR.length + INDICATORS.length;
+    private static final int PREV_STATE_POSITION = 7; // index of SKIP_CNT
+
+    private final ParameterWeights[] parameterWeights;
+    private final double[][] weights;
+    private final double[] prevStateWeights;
+    private final double[][] heightFactors;
+    private final Evaluator featureExtractor = new Evaluator(null);
+    private final int requiredFeatures;
+
+    public MultiWeightEvaluator(List<ParameterWeights> parameterWeights) {
+        int k = parameterWeights.size();
+        this.parameterWeights = parameterWeights.toArray(new ParameterWeights[k]);
+        weights = new double[k][F];
+        prevStateWeights = new double[k];
+        heightFactors = new double[k][Board.STANDARD_HEIGHT + 1];
+        int requiredFeatures = 0;
+        for (int i = 0; i < k; i++) {
+            ParameterWeights w = this.parameterWeights[i];
+            for (int f = 0; f < LINEAR.length; f++) {
+                weights[i][f] = w.get(LINEAR[f]);
+            }
+            for (int f = 0; f < INDICATORS.length; f++) {
+                weights[i][LINEAR.length + f] = w.get(INDICATORS[f]);
+            }
+            prevStateWeights[i] = w.get(PREV_STATE);
+            for (int h = 0; h < heightFactors[i].length; h++) {
+                heightFactors[i][h] = EvaluationState.getHeightFactor(h, w.get(HEIGHT), w.get(HEIGHT_POW));
+            }
+            requiredFeatures |= Evaluator.requiredFeatures(w);
+        }
+        this.requiredFeatures = requiredFeatures;
+    }
+
+    public int getWeightsCnt() {
+        return parameterWeights.length;
+    }
+
+    public ParameterWeights getParameterWeights(int k) {
+        return parameterWeights[k];
+    }
+
+    /**
+     * @param prevStateEvals previous state evaluation for each parameter set
+     * @param evaluations    receives the K evaluations
+     */
+    public void evaluate(
+            Board board,
+            int score,
+            int combo,
+            double[] prevStateEvals,
+            int skipCnt,
+            int linesCleared,
+            boolean lost,
+            int lastRound,
+            double[] evaluations
+    ) {
+        BoardFeatures features = BoardFeatures.scratch(board);
+        featureExtractor.extractFeatures(features, requiredFeatures);
+        boolean lostLocal = lost || features.maxColumnHeight == features.getHeight();
+
+        double[] x = {
+                features.badCnt,
+                features.holeCnt,
+                features.semiBadCnt,
+                score,
+                features.aboveBadFactor,
+                features.flatRate,
+                combo,
+                skipCnt,
+                features.monotonicRate,
+                features.iPatternFactor,
+                features.tSpinPattern ? 1 : 0,
+                features.semiTSpinPattern ? 1 : 0,
+                linesCleared > 0 && score == 0 ? 1 : 0,
+                linesCleared == 2 && score <= 3 ? 1 : 0
+        };
+        int maxColumnHeight = features.maxColumnHeight;
+        for (int k = 0; k < weights.length; k++) {
+            double[] w = weights[k];
+            double e = 0;
+            e += x[0] * w[0];
+            e += x[1] * w[1];
+            e += maxColumnHeight < heightFactors[k].length
+                    ? heightFactors[k][maxColumnHeight]
+                    : EvaluationState.getHeightFactor(maxColumnHeight, parameterWeights[k].get(HEIGHT), parameterWeights[k].get(HEIGHT_POW));
+            for (int f = 2; f < PREV_STATE_POSITION; f++) {
+                e += x[f] * w[f];
+            }
+            e += prevStateEvals[k] * prevStateWeights[k];
+            for (int f = PREV_STATE_POSITION; f < LINEAR.length; f++) {
+                e += x[f] * w[f];
+            }
+            for (int f = LINEAR.length; f < F; f++) {
+                if (x[f] != 0) {
+                    e += w[f];
+                }
+            }
+            evaluations[k] = EvaluationState.addLossTerm(e, lostLocal, lastRound);
+        }
+    }
+}
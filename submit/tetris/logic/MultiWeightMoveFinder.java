@@ -0,0 +1,257 @@
+package tetris.logic;
+
+import tetris.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the {@link BestMoveFinder} search once for K parameter sets. Moves are generated by
+ * {@link SearchChild#forEach}, so the skip, garbage and loss rules are the ones of the other finders. The tree below the root is the same for
+ * every set, so each node is evaluated once with {@link MultiWeightEvaluator} and values are carried as K-vectors.
+ * Only the expectimax expansion of the root depends on the set; the union of the expanded nodes is searched.
+ * For every set the chosen move is the one BestMoveFinder with that set and oneMoreLevelNodesCnt would choose.
+ */
+public class MultiWeightMoveFinder {
+    private final MultiWeightEvaluator evaluator;
+    private final int oneMoreLevelNodesCnt;
+    private final int k;
+
+    public MultiWeightMoveFinder(List<ParameterWeights> parameterWeights, int oneMoreLevelNodesCnt) {
+        this.evaluator = new MultiWeightEvaluator(parameterWeights);
+        this.oneMoreLevelNodesCnt = oneMoreLevelNodesCnt;
+        this.k = parameterWeights.size();
+    }
+
+    /**
+     * @return moves for every parameter set, in the order they were given
+     */
+    public List<List<Move>> findBestMoves(GameState gameState) {
+        TetriminoWithPosition fallingTetrimino = gameState.getFallingTetrimino();
+        TetriminoWithPosition[][][] bfs = PathFinder.bfs(gameState.getBoard(), fallingTetrimino);
+        TetriminoWithPosition[] positions = choosePlacements(gameState, bfs);
+        List<List<Move>> r = new ArrayList<>();
+        for (TetriminoWithPosition position : positions) {
+            if (position == null) {
+                r.add(new ArrayList<>(Collections.singletonList(Move.SKIP)));
+            } else {
+                r.add(BestMoveFinder.toForwardMoves(PathFinder.findMoves(fallingTetrimino, bfs, position)));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Offline analysis of a corpus of positions.
+     *
+     * @return for every position the final placement chosen by every parameter set, null means skip
+     */
+    public List<TetriminoWithPosition[]> choosePlacements(List<GameState> positions) {
+        List<TetriminoWithPosition[]> r = new ArrayList<>();
+        for (GameState gameState : positions) {
+            r.add(choosePlacements(gameState, PathFinder.bfs(gameState.getBoard(), gameState.getFallingTetrimino())));
+        }
+        return r;
+    }
+
+    /**
+     * @return agreement[a][b] = share of positions where parameter sets a and b choose the same placement
+     */
+    public double[][] agreement(List<TetriminoWithPosition[]> placements) {
+        double[][] r = new double[k][k];
+        for (TetriminoWithPosition[] p : placements) {
+            for (int a = 0; a < k; a++) {
+                for (int b = 0; b < k; b++) {
+                    if (p[a] == null ? p[b] == null : p[a].equals(p[b])) {
+                        r[a][b] += 1.0 / placements.size();
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    private TetriminoWithPosition[] choosePlacements(GameState gameState, TetriminoWithPosition[][][] bfs) {
+        double[] prevStateEvals = new double[k];
+        List<Child> children = expand(
+                gameState.getBoard(),
+                gameState.getFallingTetrimino(),
+                gameState.getNextTetrimino(),
+                0,
+                gameState.getCombo(),
+                gameState.getRound(),
+                prevStateEvals,
+                gameState.getSkipCnt(),
+                gameState.getPossibleGarbage().get(0),
+                0,
+                bfs
+        );
+        TetriminoWithPosition[] r = new TetriminoWithPosition[k];
+        double[][] expectedEvaluations = new double[children.size()][];
+        boolean shouldUseOneMoreLevel = oneMoreLevelNodesCnt != 1;
+        for (int w = 0; w < k; w++) {
+            Integer[] order = sortedOrder(children, w);
+            if (!shouldUseOneMoreLevel) {
+                r[w] = children.get(order[0]).position;
+                continue;
+            }
+            Child best = null;
+            double bestEvaluation = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < Math.min(order.length, oneMoreLevelNodesCnt); i++) {
+                int c = order[i];
+                if (expectedEvaluations[c] == null) {
+                    expectedEvaluations[c] = expectedEvaluation(children.get(c), gameState.getNextTetrimino());
+                }
+                double evaluation = expectedEvaluations[c][w];
+                if (best == null || evaluation < bestEvaluation) {
+                    best = children.get(c);
+                    bestEvaluation = evaluation;
+                }
+            }
+            r[w] = best.position;
+        }
+        return r;
+    }
+
+    private double[] search(
+            Board board,
+            TetriminoWithPosition fallingTetrimino,
+            TetriminoType nextTetrimino,
+            int score,
+            int combo,
+            int round,
+            double[] prevStateEvals,
+            int skipCnt,
+            int garbage,
+            int linesCleared
+    ) {
+        if (board.collides(fallingTetrimino)) {
+            double[] evaluations = new double[k];
+            evaluator.evaluate(board, score, 0, prevStateEvals, 0, linesCleared, true, round, evaluations);
+            return evaluations;
+        }
+        List<Child> children = expand(board, fallingTetrimino, nextTetrimino, score, combo, round, prevStateEvals,
+                skipCnt, garbage, linesCleared, PathFinder.bfs(board, fallingTetrimino));
+        double[] r = children.get(0).value.clone();
+        for (Child child : children) {
+            for (int w = 0; w < k; w++) {
+                if (Double.compare(child.value[w], r[w]) < 0) {
+                    r[w] = child.value[w];
+                }
+            }
+        }
+        return r;
+    }
+
+    private List<Child> expand(
+            Board board,
+            TetriminoWithPosition fallingTetrimino,
+            TetriminoType nextTetrimino,
+            int score,
+            int combo,
+            int round,
+            double[] prevStateEvals,
+            int skipCnt,
+            int garbage,
+            int linesCleared,
+            TetriminoWithPosition[][][] bfs
+    ) {
+        List<Child> children = new ArrayList<>();
+        SearchChild.forEach(board, fallingTetrimino, bfs, score, combo, round, skipCnt, linesCleared, garbage,
+                (position, newBoard, newScore, newCombo, newSkipCnt, evaluatedLinesCleared, newLinesCleared, lost) ->
+                        children.add(child(position, newBoard, nextTetrimino, newScore, newCombo, round, prevStateEvals,
+                                newSkipCnt, evaluatedLinesCleared, newLinesCleared, lost)));
+        return children;
+    }
+
+    /**
+     * @param evaluatedLinesCleared linesCleared passed to the evaluator, see {@link SearchChild.Visitor}
+     */
+    private Child child(
+            TetriminoWithPosition position,
+            Board newBoard,
+            TetriminoType nextTetrimino,
+            int newScore,
+            int newCombo,
+            int round,
+            double[] prevStateEvals,
+            int newSkipCnt,
+            int evaluatedLinesCleared,
+            int newLinesCleared,
+            boolean lost
+    ) {
+        double[] evaluations = new double[k];
+        evaluator.evaluate(newBoard, newScore, newCombo, prevStateEvals, newSkipCnt, evaluatedLinesCleared, lost, round, evaluations);
+        Child child = new Child(position, newBoard, newScore, newCombo, round + 1, newSkipCnt, newLinesCleared, evaluations, lost);
+        if (nextTetrimino == null || lost) {
+            child.value = evaluations;
+        } else {
+            child.value = search(newBoard, newBoard.newFallingTetrimino(nextTetrimino), null, newScore, newCombo,
+                    round + 1, evaluations, newSkipCnt, 0, newLinesCleared);
+        }
+        return child;
+    }
+
+    private double[] expectedEvaluation(Child child, TetriminoType nextTetrimino) {
+        if (child.lost) {
+            return child.value;
+        }
+        double[] r = new double[k];
+        for (TetriminoType type : TetriminoType.ALL) {
+            TetriminoWithPosition cur;
+            TetriminoType next;
+            if (nextTetrimino == null) {
+                cur = child.board.newFallingTetrimino(type);
+                next = null;
+            } else {
+                cur = child.board.newFallingTetrimino(nextTetrimino);
+                next = type;
+            }
+            double[] evaluations = search(child.board, cur, next, child.score, child.combo, child.round,
+                    child.evaluation, child.skipCnt, 0, child.linesCleared);
+            for (int w = 0; w < k; w++) {
+                r[w] += evaluations[w];
+            }
+        }
+        for (int w = 0; w < k; w++) {
+            r[w] /= TetriminoType.ALL.length;
+        }
+        return r;
+    }
+
+    private static Integer[] sortedOrder(List<Child> children, int w) {
+        Integer[] order = new Integer[children.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(children.get(a).value[w], children.get(b).value[w]));
+        return order;
+    }
+
+    private static class Child {
+        final TetriminoWithPosition position; // null means skip
+        final Board board;
+        final int score;
+        final int combo;
+        final int round;
+        final int skipCnt;
+        final int linesCleared;
+        final double[] evaluation;
+        final boolean lost;
+        double[] value;
+
+        Child(TetriminoWithPosition position, Board board, int score, int combo, int round, int skipCnt, int linesCleared, double[] evaluation, boolean lost) {
+            this.position = position;
+            this.board = board;
+            this.score = score;
+            this.combo = combo;
+            this.round = round;
+            this.skipCnt = skipCnt;
+            this.linesCleared = linesCleared;
+            this.evaluation = evaluation;
+            this.lost = lost;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package tetris.logic;
+
+import tetris.Board;
+import tetris.DropResult;
+import tetris.Move;
+import tetris.Tetrimino;
+import tetris.TetriminoType;
+import tetris.TetriminoWithPosition;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static tetris.TetriminoType.*;
+
+/**
+ * Buffers of one search node: the placements of the falling tetrimino and the per-placement arrays. Every thread
+ * keeps a stack of them, one per nested node (a worker that helps with other tasks while it waits nests them too),
+ * and reuses them between nodes and searches, so a node doesn't allocate.
+ * <p>
+ * That includes the states of the children: each placement slot owns a {@link DropResult} with its board and a
+ * {@link GameState2} record, which the next node at the same depth overwrites. The states below only read them
+ * while the node runs; a state kept longer (the root's chosen child) is copied.
+ */
+final class NodeArena {
+    private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);
+    private static final int TYPES_CNT = TetriminoType.values().length;
+
+    private final Stack stack;
+    private final PathFinder pathFinder = new PathFinder();
+    private int width;
+    private int positionsCnt;
+    private TetriminoType type;
+    private int[] placements = new int[0];
+    private int placementsCnt;
+
+    DropResult[] dropResults = new DropResult[0]; // owned by the slots, see getDropResult
+    boolean[] lost = new boolean[0];
+    boolean[] kept = new boolean[0];
+    int[] sameAs = new int[0];
+    long[] hashes = new long[0];
+    double[] estimates = new double[0];
+    double[] sortedEstimates = new double[0];
+    double[] evaluations = new double[0];
+    int[] batchIndex = new int[0];
+    double[] batchEvaluations = new double[0];
+    GameState2[] childStates = new GameState2[0]; // a duplicate placement shares the state of the first
+    private GameState2[] childRecords = new GameState2[0];
+    private DropResult skipResult;
+    private final GameState2 skipRecord = new GameState2();
+    double[] childEvaluations = new double[0];
+    double[] expandedEvaluations = new double[0];
+    double[] candidateEvaluations = new double[0];
+    int[] candidateChildren = new int[0];
+    int[] selected = new int[0];
+
+    private NodeArena(Stack stack) {
+        this.stack = stack;
+    }
+
+    /**
+     * @return the arena of a node entered on this thread, {@link #pop} it when the node returns
+     */
+    static NodeArena push() {
+        return STACKS.get().push();
+    }
+
+    /**
+     * Drops the references to the node's states, so they aren't kept alive until the arena is reused.
+     */
+    void pop() {
+        Arrays.fill(childStates, 0, placementsCnt, null);
+        placementsCnt = 0;
+        stack.pop(this);
+    }
+
+    /**
+     * Same placements in the same order as {@link BestMoveFinder#getAvailableFinalPositions} of
+     * {@link PathFinder#bfs}, and the same last moves, from the same search but without allocating. The per-placement
+     * arrays fit them.
+     */
+    void findPlacements(Board board, TetriminoWithPosition t) {
+        Tetrimino[] tetriminos = Tetrimino.ALL[t.getTetrimino().getType().ordinal()];
+        type = t.getTetrimino().getType();
+        width = board.getWidth();
+        positionsCnt = board.getHeight() * width * 4;
+        if (placements.length != positionsCnt) {
+            placements = new int[positionsCnt];
+        }
+        pathFinder.search(board, t);
+
+        placementsCnt = 0;
+        boolean symmetric = type == I || type == S || type == Z;
+        for (int row = board.getHeight() - 1; row >= 0; row--) {
+            for (int col = 0; col < width; col++) {
+                for (int orientation = 0; orientation < tetriminos.length; orientation++) {
+                    int position = pathFinder.encode(row, col, orientation);
+                    if (!pathFinder.isReached(position)) {
+                        continue;
+                    }
+                    if ((orientation == 2 || orientation == 3) && symmetric && pathFinder.isReached(position - 2)) {
+                        continue;
+                    }
+                    if (board.collides(tetriminos[orientation], row + 1, col)) {
+                        placements[placementsCnt++] = position;
+                    }
+                }
+            }
+        }
+        ensureCapacity(placementsCnt);
+    }
+
+    int getPlacementsCnt() {
+        return placementsCnt;
+    }
+
+    /**
+     * @return the placement, the same instance every time on this thread
+     */
+    TetriminoWithPosition getPlacement(int i) {
+        return stack.getPosition(type, width, positionsCnt, placements[i]);
+    }
+
+    /**
+     * @return the move that reaches the placement, null if it's the start position
+     */
+    Move getLastMove(int i) {
+        return pathFinder.getLastMove(placements[i]);
+    }
+
+    /**
+     * @return moves from the placement back to the start, as {@link PathFinder#findMoves}
+     */
+    List<Move> findMoves(int i) {
+        return pathFinder.findMoves(placements[i]);
+    }
+
+    /**
+     * @return the result of placement i to drop into, its board has the size of board
+     */
+    DropResult getDropResult(int i, Board board) {
+        DropResult r = dropResults[i];
+        if (r == null || r.getBoard().getHeight() != board.getHeight() || r.getBoard().getWidth() != board.getWidth()) {
+            r = new DropResult(new Board(board));
+            dropResults[i] = r;
+        }
+        return r;
+    }
+
+    /**
+     * @return the record of the state placement i leads to
+     */
+    GameState2 getChildRecord(int i) {
+        return childRecords[i];
+    }
+
+    /**
+     * @return the result of the skip to write to, its board has the size of board
+     */
+    DropResult getSkipResult(Board board) {
+        DropResult r = skipResult;
+        if (r == null || r.getBoard().getHeight() != board.getHeight() || r.getBoard().getWidth() != board.getWidth()) {
+            r = new DropResult(new Board(board));
+            skipResult = r;
+        }
+        return r;
+    }
+
+    GameState2 getSkipRecord() {
+        return skipRecord;
+    }
+
+    double[] getBatchEvaluations(int size) {
+        if (batchEvaluations.length < size) {
+            batchEvaluations = new double[Math.max(size, 2 * batchEvaluations.length)];
+        }
+        return batchEvaluations;
+    }
+
+    private void ensureCapacity(int n) {
+        if (dropResults.length >= n + 1) {
+            return;
+        }
+        int capacity = Math.max(n + 1, 2 * dropResults.length);
+        dropResults = Arrays.copyOf(dropResults, capacity);
+        int recordsCnt = childRecords.length;
+        childRecords = Arrays.copyOf(childRecords, capacity);
+        for (int i = recordsCnt; i < capacity; i++) {
+            childRecords[i] = new GameState2();
+        }
+        lost = new boolean[capacity];
+        kept = new boolean[capacity];
+        sameAs = new int[capacity];
+        hashes = new long[capacity];
+        estimates = new double[capacity];
+        sortedEstimates = new double[capacity];
+        evaluations = new double[capacity];
+        batchIndex = new int[capacity];
+        childStates = new GameState2[capacity];
+        childEvaluations = new double[capacity];
+        expandedEvaluations = new double[capacity];
+        candidateEvaluations = new double[capacity];
+        candidateChildren = new int[capacity];
+        selected = new int[capacity];
+    }
+
+    private static final class Stack {
+        private NodeArena[] arenas = new NodeArena[0];
+        private int size;
+        // positions are immutable, one instance per encoded position and type
+        private TetriminoWithPosition[] positions = new TetriminoWithPosition[0];
+
+        NodeArena push() {
+            if (size == arenas.length) {
+                arenas = Arrays.copyOf(arenas, Math.max(8, 2 * size));
+            }
+            if (arenas[size] == null) {
+                arenas[size] = new NodeArena(this);
+            }
+            return arenas[size++];
+        }
+
+        void pop(NodeArena arena) {
+            if (arenas[size - 1] != arena) {
+                throw new IllegalStateException("arenas must be popped in the reverse order");
+            }
+            size--;
+        }
+
+        TetriminoWithPosition getPosition(TetriminoType type, int width, int positionsCnt, int position) {
+            if (positions.length != TYPES_CNT * positionsCnt) {
+                positions = new TetriminoWithPosition[TYPES_CNT * positionsCnt];
+            }
+            int index = type.ordinal() * positionsCnt + position;
+            TetriminoWithPosition r = positions[index];
+            if (r == null) {
+                int cell = position >> 2;
+                r = new TetriminoWithPosition(cell / width, cell % width, Tetrimino.of(type, position & 3));
+                positions[index] = r;
+            }
+            return r;
+        }
+    }
+}
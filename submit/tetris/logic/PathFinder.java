@@ -2,17 +2,38 @@ package tetris.logic;
 
 import tetris.Board;
 import tetris.Move;
+import tetris.Tetrimino;
 import tetris.TetriminoWithPosition;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
 
 import static tetris.Move.*;
 import static tetris.Move.ROTATE_CCW;
 
+/**
+ * Breadth-first search over the positions of a falling tetrimino, encoded as
+ * (topRow * width + leftCol) * 4 + orientation. An instance reuses its buffers between searches, so
+ * {@link #search} allocates nothing; {@link NodeArena} keeps one per search node and {@link #bfs} one per thread.
+ */
 class PathFinder {
+    /**
+     * Neighbours in the order they are visited.
+     */
+    private static final Move[] MOVES = {ROTATE_CW, ROTATE_CCW, LEFT, RIGHT, DOWN};
+    private static final int[] ROW_STEPS = {0, 0, 0, 0, 1};
+    private static final int[] COL_STEPS = {0, 0, -1, 1, 0};
+    private static final ThreadLocal<PathFinder> SHARED = ThreadLocal.withInitial(PathFinder::new);
+
+    private int width;
+    private int[] visitedStamps = new int[0];
+    private int stamp;
+    private int[] from = new int[0];
+    private byte[] lastMoves = new byte[0];
+    private int[] queue = new int[0];
+    private int start;
+
     static Move getPrevMove(TetriminoWithPosition cur, TetriminoWithPosition prev) {
         Move prevMove;
         if (prev.moveLeft().equals(cur)) {
@@ -33,36 +54,39 @@ class PathFinder {
         return prevMove;
     }
 
+    /**
+     * @return for every reachable position the position it is first reached from, the start position for itself;
+     * null for the rest
+     */
     static TetriminoWithPosition[][][] bfs(Board board, TetriminoWithPosition t) {
-        TetriminoWithPosition[][][] from = new TetriminoWithPosition[board.getHeight()][board.getWidth()][t.getTetrimino().getOrientationsCnt()];
-        from[t.getTopRow()][t.getLeftCol()][t.getTetrimino().getOrientation()] = t;
-        Queue<TetriminoWithPosition> q = new ArrayDeque<>();
-        q.add(t);
-        while (!q.isEmpty()) {
-            t = q.remove();
-            List<TetriminoWithPosition> nextPositions = new ArrayList<>();
-            nextPositions.add(t.rotateCW());
-            nextPositions.add(t.rotateCCW());
-            nextPositions.add(t.moveLeft());
-            nextPositions.add(t.moveRight());
-            nextPositions.add(t.moveDown());
-            for (TetriminoWithPosition p : nextPositions) {
-                if (board.collides(p)) {
-                    continue;
+        PathFinder pathFinder = SHARED.get();
+        pathFinder.search(board, t);
+        Tetrimino[] tetriminos = Tetrimino.ALL[t.getTetrimino().getType().ordinal()];
+        TetriminoWithPosition[][][] r = new TetriminoWithPosition[board.getHeight()][board.getWidth()][tetriminos.length];
+        TetriminoWithPosition[] positions = new TetriminoWithPosition[pathFinder.visitedStamps.length];
+        positions[pathFinder.start] = t;
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < board.getWidth(); col++) {
+                for (int orientation = 0; orientation < tetriminos.length; orientation++) {
+                    int position = pathFinder.encode(row, col, orientation);
+                    if (!pathFinder.isReached(position)) {
+                        continue;
+                    }
+                    int prev = pathFinder.from[position];
+                    if (positions[prev] == null) {
+                        int cell = prev >> 2;
+                        positions[prev] = new TetriminoWithPosition(cell / pathFinder.width, cell % pathFinder.width, tetriminos[prev & 3]);
+                    }
+                    r[row][col][orientation] = positions[prev];
                 }
-                if (from[p.getTopRow()][p.getLeftCol()][p.getTetrimino().getOrientation()] != null) {
-                    continue;
-                }
-                from[p.getTopRow()][p.getLeftCol()][p.getTetrimino().getOrientation()] = t;
-                q.add(p);
             }
         }
-        return from;
+        return r;
     }
 
-    static List<Move> findMoves(TetriminoWithPosition fallingTetrimino, TetriminoWithPosition[][][] bfs, BestMoveFinder.SearchState bestSearchState) {
+    static List<Move> findMoves(TetriminoWithPosition fallingTetrimino, TetriminoWithPosition[][][] bfs, TetriminoWithPosition finalPosition) {
         List<Move> moves = new ArrayList<>();
-        TetriminoWithPosition cur = bestSearchState.position;
+        TetriminoWithPosition cur = finalPosition;
         while (!cur.equals(fallingTetrimino)) {
             TetriminoWithPosition prev = bfs[cur.getTopRow()][cur.getLeftCol()][cur.getTetrimino().getOrientation()];
             Move prevMove = PathFinder.getPrevMove(cur, prev);
@@ -71,4 +95,82 @@ class PathFinder {
         }
         return moves;
     }
+
+    /**
+     * Finds the positions t can reach on the board, the results are valid until the next search.
+     */
+    void search(Board board, TetriminoWithPosition t) {
+        Tetrimino[] tetriminos = Tetrimino.ALL[t.getTetrimino().getType().ordinal()];
+        width = board.getWidth();
+        int positionsCnt = board.getHeight() * width * 4;
+        if (visitedStamps.length != positionsCnt) {
+            visitedStamps = new int[positionsCnt];
+            from = new int[positionsCnt];
+            lastMoves = new byte[positionsCnt];
+            queue = new int[positionsCnt];
+            stamp = 0;
+        }
+        if (++stamp == 0) {
+            Arrays.fill(visitedStamps, 0);
+            stamp = 1;
+        }
+
+        start = encode(t.getTopRow(), t.getLeftCol(), t.getTetrimino().getOrientation());
+        visitedStamps[start] = stamp;
+        from[start] = start;
+        lastMoves[start] = -1;
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int cur = queue[head++];
+            int orientation = cur & 3;
+            int topRow = (cur >> 2) / width;
+            int leftCol = (cur >> 2) % width;
+            Tetrimino tetrimino = tetriminos[orientation];
+            for (int move = 0; move < MOVES.length; move++) {
+                Tetrimino next = move == 0 ? tetrimino.rotateCW() : move == 1 ? tetrimino.rotateCCW() : tetrimino;
+                int nextTopRow = topRow + ROW_STEPS[move] + tetrimino.getRowShift() - next.getRowShift();
+                int nextLeftCol = leftCol + COL_STEPS[move] + tetrimino.getColShift() - next.getColShift();
+                if (nextTopRow < 0 || board.collides(next, nextTopRow, nextLeftCol)) {
+                    continue;
+                }
+                int position = encode(nextTopRow, nextLeftCol, next.getOrientation());
+                if (visitedStamps[position] == stamp) {
+                    continue;
+                }
+                visitedStamps[position] = stamp;
+                from[position] = cur;
+                lastMoves[position] = (byte) move;
+                queue[tail++] = position;
+            }
+        }
+    }
+
+    int encode(int topRow, int leftCol, int orientation) {
+        return ((topRow * width + leftCol) << 2) | orientation;
+    }
+
+    boolean isReached(int position) {
+        return visitedStamps[position] == stamp;
+    }
+
+    /**
+     * @return the move that reaches the position first, null for the start position
+     */
+    Move getLastMove(int position) {
+        byte move = lastMoves[position];
+        return move < 0 ? null : MOVES[move];
+    }
+
+    /**
+     * @return moves from the position back to the start, as {@link #findMoves(TetriminoWithPosition, TetriminoWithPosition[][][], TetriminoWithPosition)}
+     */
+    List<Move> findMoves(int position) {
+        List<Move> moves = new ArrayList<>();
+        for (int cur = position; cur != start; cur = from[cur]) {
+            moves.add(MOVES[lastMoves[cur]]);
+        }
+        return moves;
+    }
 }
@@ -0,0 +1,183 @@
+package tetris.logic;
+
+import tetris.Board;
+import tetris.GameState;
+import tetris.Move;
+import tetris.TetriminoType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches the position after our move while the bot waits for the next update. The board, the falling
+ * tetrimino and the rest are predicted, only the tetrimino after it isn't known, so every type is searched
+ * (anytime, on daemon threads, each by a {@link BestMoveFinder#copy} of the bot's finder, so pondered moves are
+ * the ones the bot would have found). {@link #take} stops the searches and returns the pondered moves if the real
+ * state is one of the predicted ones.
+ */
+public class Ponderer {
+    private final BestMoveFinder finder;
+    private final long ponderMillis;
+    private final ExecutorService executor;
+    private List<Pondering> ponderings = new ArrayList<>();
+    private int hitCnt;
+    private int missCnt;
+
+    /**
+     * @param finder settings of the pondering searches, it isn't searched with itself
+     * @param threadsCnt capped at the number of types, there are no more searches to run at once
+     * @param ponderMillis longest time a search goes on if nothing stops it
+     */
+    public Ponderer(BestMoveFinder finder, int threadsCnt, long ponderMillis) {
+        this.finder = finder;
+        this.ponderMillis = ponderMillis;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threadsCnt, TetriminoType.ALL.length)), runnable -> {
+            Thread thread = new Thread(runnable, "ponderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops the previous pondering and starts searching the predicted state with every type as the next
+     * tetrimino, the next tetrimino of predicted is ignored.
+     */
+    public void ponder(GameState predicted) {
+        for (Pondering pondering : stop()) {
+            pondering.future.cancel(false);
+        }
+        long deadline = System.nanoTime() + ponderMillis * 1_000_000L;
+        for (TetriminoType type : TetriminoType.ALL) {
+            GameState gameState = new GameState(
+                    predicted.getBoard(),
+                    predicted.getFallingTetrimino(),
+                    type,
+                    predicted.getCombo(),
+                    predicted.getRound(),
+                    predicted.getSkipCnt(),
+                    predicted.getPossibleGarbage()
+            );
+            BestMoveFinder copy = finder.copy();
+            Future<Pondered> future = executor.submit(() -> {
+                List<Move> moves = copy.findBestMoves(gameState, deadline);
+                return new Pondered(moves, copy.getLastCompletedWidths().length);
+            });
+            ponderings.add(new Pondering(gameState, copy, future));
+        }
+    }
+
+    /**
+     * Stops the pondering. Waits for the search of gameState if there was one.
+     *
+     * @param minChanceLevels chance levels the pondered search must have finished to be used
+     * @return pondered moves for gameState, null if it wasn't predicted or wasn't searched deep enough (a search
+     * stopped before its first pass has no moves)
+     */
+    public List<Move> take(GameState gameState, int minChanceLevels) {
+        List<Pondering> stopped = stop();
+        if (stopped.isEmpty()) {
+            return null;
+        }
+        Pondering match = null;
+        for (Pondering pondering : stopped) {
+            if (match == null && isSameSearch(pondering.gameState, gameState)) {
+                match = pondering;
+            } else {
+                pondering.future.cancel(false);
+            }
+        }
+        if (match != null) {
+            try {
+                Pondered pondered = match.future.get();
+                if (pondered.moves != null && pondered.chanceLevels >= minChanceLevels) {
+                    hitCnt++;
+                    return pondered.moves;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        missCnt++;
+        return null;
+    }
+
+    /**
+     * @return whether a search of the last {@link #ponder} is still running
+     */
+    public boolean isPondering() {
+        for (Pondering pondering : ponderings) {
+            if (!pondering.future.isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return takes that returned pondered moves
+     */
+    public int getHitCnt() {
+        return hitCnt;
+    }
+
+    /**
+     * @return takes after a pondering that returned null
+     */
+    public int getMissCnt() {
+        return missCnt;
+    }
+
+    private List<Pondering> stop() {
+        List<Pondering> stopped = ponderings;
+        ponderings = new ArrayList<>();
+        for (Pondering pondering : stopped) {
+            pondering.finder.stop();
+        }
+        return stopped;
+    }
+
+    /**
+     * Compares what the search depends on: the garbage (added to the real board) makes the boards differ, and of
+     * the possible garbage the search only uses the first value.
+     */
+    private static boolean isSameSearch(GameState a, GameState b) {
+        Board aBoard = a.getBoard();
+        Board bBoard = b.getBoard();
+        return aBoard.equals(bBoard)
+                && aBoard.getPenalty() == bBoard.getPenalty()
+                && a.getFallingTetrimino().equals(b.getFallingTetrimino())
+                && a.getNextTetrimino() == b.getNextTetrimino()
+                && a.getCombo() == b.getCombo()
+                && a.getRound() == b.getRound()
+                && a.getSkipCnt() == b.getSkipCnt()
+                && a.getPossibleGarbage().get(0).equals(b.getPossibleGarbage().get(0));
+    }
+
+    private static final class Pondering {
+        final GameState gameState;
+        final BestMoveFinder finder;
+        final Future<Pondered> future;
+
+        Pondering(GameState gameState, BestMoveFinder finder, Future<Pondered> future) {
+            this.gameState = gameState;
+            this.finder = finder;
+            this.future = future;
+        }
+    }
+
+    private static final class Pondered {
+        final List<Move> moves;
+        final int chanceLevels;
+
+        Pondered(List<Move> moves, int chanceLevels) {
+            this.moves = moves;
+            this.chanceLevels = chanceLevels;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package tetris.logic;
+
+import tetris.Board;
+
+import static tetris.logic.EvaluationParameter.*;
+
+/**
+ * Fixed-point version of {@link Evaluator}. Weights are rounded to multiples of 1 / SCALE once, after that
+ * everything is integer arithmetic, so the result doesn't depend on the order in which boards or terms are summed.
+ * The static part (everything except the previous state and loss terms) fits in an int; the full evaluation is a
+ * long because of the loss term, which is why {@link EvaluationCache#ofQuantized} stores ints and the transposition
+ * table, holding searched values, doesn't. The table returns those values as stored, never rescaled, so searches
+ * with it stay in the same integer arithmetic.
+ */
+public class QuantizedEvaluator {
+    public static final int FRACTION_BITS = 10;
+    public static final long SCALE = 1L << FRACTION_BITS;
+    private static final int PREV_STATE_FRACTION_BITS = 16;
+    static final long LOSS = 1L << 50;
+    static final long LOSS_ROUND_STEP = 1L << 36;
+
+    private final ParameterWeights parameterWeight;
+    private final Evaluator featureExtractor = new Evaluator(null);
+    private final int requiredFeatures;
+    private final long[] heightFactors;
+    private final long badCntWeight;
+    private final long holeCntWeight;
+    private final long semiBadCntWeight;
+    private final long scoreWeight;
+    private final long cellsAboveTopWeight;
+    private final long flatRateWeight;
+    private final long comboWeight;
+    private final long skipCntWeight;
+    private final long monotonicRateWeight;
+    private final long iPatternWeight;
+    private final long tSpinPatternWeight;
+    private final long semiTSpinPatternWeight;
+    private final long lowEfficiencyWeight;
+    private final long lowEfficiency2Weight;
+    private final long prevStateWeight;
+
+    public QuantizedEvaluator(ParameterWeights parameterWeight) {
+        this.parameterWeight = parameterWeight;
+        this.requiredFeatures = Evaluator.requiredFeatures(parameterWeight);
+        ParameterWeights w = parameterWeight == null ? ParameterWeights.zero() : parameterWeight;
+        heightFactors = new long[Board.STANDARD_HEIGHT + 1];
+        for (int h = 0; h < heightFactors.length; h++) {
+            heightFactors[h] = quantize(EvaluationState.getHeightFactor(h, w.get(HEIGHT), w.get(HEIGHT_POW)));
+        }
+        badCntWeight = quantize(w.get(BAD_CNT));
+        holeCntWeight = quantize(w.get(HOLE_CNT));
+        semiBadCntWeight = quantize(w.get(SEMI_BAD_CNT));
+        scoreWeight = quantize(w.get(SCORE));
+        cellsAboveTopWeight = quantize(w.get(CELLS_ABOVE_TOP));
+        flatRateWeight = quantize(w.get(FLAT_RATE));
+        comboWeight = quantize(w.get(COMBO));
+        skipCntWeight = quantize(w.get(SKIP_CNT));
+        monotonicRateWeight = quantize(w.get(MONOTONIC_RATE));
+        iPatternWeight = quantize(w.get(I_PATTERN));
+        tSpinPatternWeight = quantize(w.get(T_SPIN_PATTERN));
+        semiTSpinPatternWeight = quantize(w.get(SEMI_T_SPIN_PATTERN));
+        lowEfficiencyWeight = quantize(w.get(LOW_EFFICIENCY));
+        lowEfficiency2Weight = quantize(w.get(LOW_EFFICIENCY2));
+        prevStateWeight = Math.round(w.get(PREV_STATE) * (1L << PREV_STATE_FRACTION_BITS));
+    }
+
+    /**
+     * Quantized counterpart of {@link Evaluator#evaluate}, in units of 1 / SCALE. A lost state scores
+     * LOSS - lastRound * LOSS_ROUND_STEP above its static part, so it is worse than any state that isn't lost and
+     * losing later is better, like with the double evaluator.
+     */
+    public long evaluate(
+            Board board,
+            int score,
+            int combo,
+            long prevStateEval,
+            int skipCnt,
+            int linesCleared,
+            boolean lost,
+            int lastRound
+    ) {
+        BoardFeatures features = BoardFeatures.scratch(board);
+        featureExtractor.extractFeatures(features, requiredFeatures);
+        boolean lostLocal = lost || features.maxColumnHeight == features.getHeight();
+        return calcEvaluation(calcStaticEvaluation(features, score, combo, skipCnt, linesCleared), prevStateEval, lostLocal, lastRound);
+    }
+
+    /**
+     * @return the static part of the evaluation, the value to keep in caches and transposition tables
+     */
+    public int evaluateStatic(Board board, int score, int combo, int skipCnt, int linesCleared) {
+        BoardFeatures features = BoardFeatures.scratch(board);
+        featureExtractor.extractFeatures(features, requiredFeatures);
+        return calcStaticEvaluation(features, score, combo, skipCnt, linesCleared);
+    }
+
+    /**
+     * Same as {@link #evaluate}, taking the static part from the cache when it has it. Unlike
+     * {@link Evaluator#getCachedEvaluation} lost states are cached too, the loss term is added afterwards.
+     */
+    public long getCachedEvaluation(
+            EvaluationCache cache,
+            Board board,
+            int score,
+            int combo,
+            long prevStateEval,
+            int skipCnt,
+            int linesCleared,
+            boolean lost,
+            int lastRound
+    ) {
+        int fields = EvaluationCache.quantizedFields(score, combo, skipCnt, linesCleared);
+        if (fields == EvaluationCache.NOT_CACHED) {
+            return evaluate(board, score, combo, prevStateEval, skipCnt, linesCleared, lost, lastRound);
+        }
+        long boardHash = board.longHashCode();
+        long cached = cache.getQuantized(boardHash, fields);
+        int staticEvaluation;
+        if (cached == EvaluationCache.MISS) {
+            staticEvaluation = evaluateStatic(board, score, combo, skipCnt, linesCleared);
+            cache.putQuantized(boardHash, fields, staticEvaluation);
+        } else {
+            staticEvaluation = (int) cached;
+        }
+        return calcEvaluation(staticEvaluation, prevStateEval, Evaluator.isLost(board, lost), lastRound);
+    }
+
+    public long calcEvaluation(int staticEvaluation, long prevStateEval, boolean lost, int lastRound) {
+        if (parameterWeight == null) {
+            return 0;
+        }
+        long x = staticEvaluation;
+        x += (prevStateEval * prevStateWeight) >> PREV_STATE_FRACTION_BITS;
+        if (lost) {
+            x += LOSS - lastRound * LOSS_ROUND_STEP;
+        }
+        return x;
+    }
+
+    public static double toDouble(long evaluation) {
+        return evaluation / (double) SCALE;
+    }
+
+    /**
+     * Saturates at the int range, far beyond anything a real board scores.
+     */
+    private int calcStaticEvaluation(BoardFeatures features, int score, int combo, int skipCnt, int linesCleared) {
+        if (parameterWeight == null) {
+            return 0;
+        }
+        long x = 0;
+        x += features.badCnt * badCntWeight;
+        x += features.holeCnt * holeCntWeight;
+        x += getHeightFactor(features.maxColumnHeight);
+        x += features.semiBadCnt * semiBadCntWeight;
+        x += score * scoreWeight;
+        x += features.aboveBadFactor * cellsAboveTopWeight;
+        x += features.flatRate * flatRateWeight;
+        x += combo * comboWeight;
+        x += skipCnt * skipCntWeight;
+        x += features.monotonicRate * monotonicRateWeight;
+        x += features.iPatternFactor * iPatternWeight;
+        if (features.tSpinPattern) {
+            x += tSpinPatternWeight;
+        }
+        if (features.semiTSpinPattern) {
+            x += semiTSpinPatternWeight;
+        }
+        if (linesCleared > 0 && score == 0) {
+            x += lowEfficiencyWeight;
+        }
+        if (linesCleared == 2 && score <= 3) {
+            x += lowEfficiency2Weight;
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, x));
+    }
+
+    private long getHeightFactor(int maxColumnHeight) {
+        if (maxColumnHeight < heightFactors.length) {
+            return heightFactors[maxColumnHeight];
+        }
+        return quantize(EvaluationState.getHeightFactor(maxColumnHeight, parameterWeight.get(HEIGHT), parameterWeight.get(HEIGHT_POW)));
+    }
+
+    private static long quantize(double weight) {
+        return Math.round(weight * SCALE);
+    }
+}
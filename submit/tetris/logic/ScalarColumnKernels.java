@@ -0,0 +1,55 @@
+package tetris.logic;
+
+import static java.lang.Math.*;
+
+class ScalarColumnKernels implements ColumnKernels {
+    @Override
+    public int maxColumnHeight(int[] heights, int width) {
+        int r = 0;
+        for (int col = 1; col <= width; col++) {
+            r = max(r, heights[col]);
+        }
+        return r;
+    }
+
+    @Override
+    public int flatRate(int[] heights, int width) {
+        int r = 0;
+        for (int col = 1; col < width; col++) {
+            r += abs(heights[col] - heights[col + 1]);
+        }
+        return r;
+    }
+
+    @Override
+    public int holeCnt(int[] heights, int width) {
+        int r = 0;
+        for (int col = 1; col <= width; col++) {
+            int holeHeight = min(heights[col - 1], heights[col + 1]) - heights[col];
+            if (holeHeight > 2) {
+                r += (holeHeight + 1) / 4;
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public int monotonicRate(int[] heights, int width) {
+        int r = 0;
+        for (int col = 1; col <= width / 2 - 1; col++) {
+            int h1 = heights[col];
+            int h2 = heights[col + 1];
+            if (h1 < h2) {
+                r += h2 - h1;
+            }
+        }
+        for (int col = width / 2 + 1; col <= width - 1; col++) {
+            int h1 = heights[col];
+            int h2 = heights[col + 1];
+            if (h2 < h1) {
+                r += h1 - h2;
+            }
+        }
+        return r;
+    }
+}
@@ -0,0 +1,165 @@
+package tetris.logic;
+
+import tetris.Board;
+import tetris.DropResult;
+import tetris.TetriminoWithPosition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State after one move, generated and evaluated the way {@link BestMoveFinder} does it (without the batch and the
+ * prefilter). The child state has no falling tetrimino and its prevStateEval is the child's evaluation.
+ * <p>
+ * The rules of a move (the skip, the garbage added after it and the loss) are kept here, finders that carry other
+ * values than one evaluation per state go through {@link #forEach}.
+ */
+final class SearchChild {
+    final GameState2 state;
+    final double evaluation;
+    final boolean lost;
+    final TetriminoWithPosition position; // null means skip
+
+    private SearchChild(GameState2 state, double evaluation, boolean lost, TetriminoWithPosition position) {
+        this.state = state;
+        this.evaluation = evaluation;
+        this.lost = lost;
+        this.position = position;
+    }
+
+    /**
+     * Receives a state one move leads to, before it is evaluated.
+     */
+    interface Visitor {
+        /**
+         * @param position              final position, null for the skip
+         * @param evaluatedLinesCleared linesCleared the evaluation gets, the skip passes 0 like BestMoveFinder
+         */
+        void visit(TetriminoWithPosition position, Board newBoard, int newScore, int newCombo, int newSkipCnt, int evaluatedLinesCleared, int newLinesCleared, boolean lost);
+    }
+
+    /**
+     * @return the skip (if there is one) and every final position of the falling tetrimino, in the order
+     * BestMoveFinder considers them
+     */
+    static List<SearchChild> generate(Evaluator evaluator, GameState2 state, TetriminoWithPosition fallingTetrimino, TetriminoWithPosition[][][] bfs) {
+        List<SearchChild> children = new ArrayList<>();
+        forEach(state.board, fallingTetrimino, bfs, state.score, state.combo, state.round, state.skipCnt, state.linesCleared,
+                state.possibleGarbage.get(0), // todo garbage
+                (position, newBoard, newScore, newCombo, newSkipCnt, evaluatedLinesCleared, newLinesCleared, lost) ->
+                        children.add(create(evaluator, state, position, newBoard, newScore, newCombo, newSkipCnt, evaluatedLinesCleared, newLinesCleared, lost)));
+        return children;
+    }
+
+    /**
+     * Visits the skip (if there is one) and every final position of the falling tetrimino, in the order
+     * BestMoveFinder considers them, with the garbage added to the resulting boards.
+     */
+    static void forEach(
+            Board board,
+            TetriminoWithPosition fallingTetrimino,
+            TetriminoWithPosition[][][] bfs,
+            int score,
+            int combo,
+            int round,
+            int skipCnt,
+            int linesCleared,
+            int garbage,
+            Visitor visitor
+    ) {
+        if (skipCnt > 0) {
+            Board newBoard = skip(board, score, round, garbage);
+            visitor.visit(null, newBoard, score, combo, skipCnt - 1, 0, linesCleared, Evaluator.isLost(newBoard, false));
+        }
+        for (TetriminoWithPosition finalPosition : BestMoveFinder.getAvailableFinalPositions(board, fallingTetrimino, bfs)) {
+            DropResult dropResult = board.drop(finalPosition, PathFinder.getPrevMove(
+                    finalPosition,
+                    bfs[finalPosition.getTopRow()][finalPosition.getLeftCol()][finalPosition.getTetrimino().getOrientation()]),
+                    combo,
+                    round
+            );
+            visitDrop(finalPosition, dropResult, score, skipCnt, linesCleared, garbage, visitor);
+        }
+    }
+
+    /**
+     * @return child after the drop, garbage lines are added to the resulting board
+     */
+    static SearchChild of(Evaluator evaluator, GameState2 state, DropResult dropResult, int garbage, TetriminoWithPosition position) {
+        SearchChild[] r = new SearchChild[1];
+        visitDrop(position, dropResult, state.score, state.skipCnt, state.linesCleared, garbage,
+                (p, newBoard, newScore, newCombo, newSkipCnt, evaluatedLinesCleared, newLinesCleared, lost) ->
+                        r[0] = create(evaluator, state, p, newBoard, newScore, newCombo, newSkipCnt, evaluatedLinesCleared, newLinesCleared, lost));
+        return r[0];
+    }
+
+    /**
+     * @return board after the skip, with the garbage added
+     */
+    static Board skip(Board board, int score, int round, int garbage) {
+        return skip(board, score, round, garbage, new DropResult(new Board(board)));
+    }
+
+    /**
+     * Same as {@link #skip(Board, int, int, int)}, the board is result's, overwritten.
+     */
+    static Board skip(Board board, int score, int round, int garbage, DropResult result) {
+        Board newBoard = board.skipMove(score, round, result).getBoard();
+        addGarbage(newBoard, garbage);
+        return newBoard;
+    }
+
+    /**
+     * Adds the garbage lines expected after the move to its resulting board.
+     */
+    static void addGarbage(Board newBoard, int garbage) {
+        for (int i = 0; i < garbage; i++) { // todo garbage
+            newBoard.addPenalty();
+        }
+    }
+
+    /**
+     * @return loss evaluation of a state whose falling tetrimino collides on spawn
+     */
+    static double collisionEvaluation(Evaluator evaluator, GameState2 state) {
+        return evaluator.evaluate(state.board, state.score, 0, state.prevStateEval, 0, state.linesCleared, true, state.round);
+    }
+
+    private static void visitDrop(TetriminoWithPosition position, DropResult dropResult, int score, int skipCnt, int linesCleared, int garbage, Visitor visitor) {
+        Board newBoard = dropResult.getBoard();
+        addGarbage(newBoard, garbage);
+        int newLinesCleared = linesCleared + dropResult.getLinesCleared();
+        visitor.visit(
+                position,
+                newBoard,
+                score + dropResult.getScoreAdded(),
+                dropResult.getCombo(),
+                skipCnt + dropResult.getSkipAdded(),
+                newLinesCleared,
+                newLinesCleared,
+                Evaluator.isLost(newBoard, dropResult.isLost())
+        );
+    }
+
+    private static SearchChild create(
+            Evaluator evaluator,
+            GameState2 state,
+            TetriminoWithPosition position,
+            Board newBoard,
+            int newScore,
+            int newCombo,
+            int newSkipCnt,
+            int evaluatedLinesCleared,
+            int newLinesCleared,
+            boolean lost
+    ) {
+        double evaluation = evaluator.evaluate(newBoard, newScore, newCombo, state.prevStateEval, newSkipCnt, evaluatedLinesCleared, lost, state.round);
+        return new SearchChild(
+                new GameState2(newBoard, null, null, newScore, newCombo, state.round + 1, evaluation, newSkipCnt, Collections.singletonList(0), newLinesCleared),
+                evaluation,
+                lost,
+                position
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package tetris.logic;
+
+import tetris.GameState;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the timebank between moves. A move gets the time the bank regains per move plus a share of what the bank
+ * holds above half of its maximum, scaled up on dangerous boards (high stack, pending garbage, close top moves)
+ * and down on obvious ones; a forced move gets nothing. Never more than half of what is left after the reserve.
+ * <p>
+ * The bank the engine reports is compared with what the last moves spent, the difference (input, output, pauses
+ * outside the search) is added to the reserve.
+ */
+public class TimeManager {
+    public static final long RESERVE_MILLIS = 50;
+    private static final int SURPLUS_SHARE = 10;
+    private static final double CLOSE_MARGIN = 2;
+    private static final double OBVIOUS_MARGIN = 40;
+
+    private final long maxTimebank;
+    private final long timePerMove;
+    private final PrintStream log;
+    private long expectedTimebank = -1;
+    private long overheadMillis;
+
+    /**
+     * @param log receives one line per allocation, null for none
+     */
+    public TimeManager(long maxTimebank, long timePerMove, PrintStream log) {
+        this.maxTimebank = maxTimebank;
+        this.timePerMove = timePerMove;
+        this.log = log;
+    }
+
+    /**
+     * @param timebank    milliseconds left, as the engine reports them
+     * @param rootMargin  evaluation difference between the two best placements, see
+     *                    {@link BestMoveFinder#getLastRootMargin()}
+     * @param choicesCnt  number of placements to choose from
+     * @return milliseconds the search may take
+     */
+    public long allocate(long timebank, GameState gameState, double rootMargin, int choicesCnt) {
+        if (expectedTimebank >= 0) {
+            overheadMillis = Math.max(expectedTimebank - timebank, overheadMillis * 3 / 4);
+        }
+        long available = Math.max(0, timebank - RESERVE_MILLIS - overheadMillis);
+        double danger = getDanger(gameState);
+        double budget;
+        if (choicesCnt <= 1) {
+            budget = 0;
+        } else {
+            budget = timePerMove + Math.max(0, timebank - maxTimebank / 2) / (double) SURPLUS_SHARE;
+            budget *= danger;
+            if (rootMargin < CLOSE_MARGIN) {
+                budget *= 1.5;
+            } else if (rootMargin > OBVIOUS_MARGIN) {
+                budget *= 0.25;
+            }
+        }
+        long r = Math.min(available / 2, (long) budget);
+        if (log != null) {
+            log.printf("time: round=%d timebank=%d overhead=%d danger=%.2f margin=%.2f choices=%d budget=%d%n",
+                    gameState.getRound(), timebank, overheadMillis, danger, rootMargin, choicesCnt, r);
+        }
+        return r;
+    }
+
+    /**
+     * @return the deadline {@link #allocate} gives a search started at start, in {@link System#nanoTime()} terms
+     */
+    public long getDeadline(long start, long timebank, GameState gameState, double rootMargin, int choicesCnt) {
+        return start + TimeUnit.MILLISECONDS.toNanos(allocate(timebank, gameState, rootMargin, choicesCnt));
+    }
+
+    /**
+     * Records the time the move took in total, the bank of the next move should be the current one minus that plus
+     * timePerMove.
+     */
+    public void finish(long timebank, long spentMillis) {
+        expectedTimebank = Math.min(maxTimebank, timebank - spentMillis + timePerMove);
+    }
+
+    /**
+     * 1 for a low stack without garbage, up to 3 for a full board with garbage coming.
+     */
+    static double getDanger(GameState gameState) {
+        double heightRate = gameState.getBoard().getMaxColumnHeight() / (double) gameState.getBoard().getHeight();
+        List<Integer> possibleGarbage = gameState.getPossibleGarbage();
+        int garbage = possibleGarbage.isEmpty() ? 0 : possibleGarbage.get(0);
+        return 1 + 3 * Math.max(0, heightRate - 0.5) + Math.min(0.5, garbage * 0.25);
+    }
+}
@@ -0,0 +1,199 @@
+package tetris.logic;
+
+import tetris.TetriminoWithPosition;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size table of searched states: value and depth. The key covers everything the value depends on,
+ * prevStateEval included: the value isn't linear in it (lost children weigh it once whatever the depth, the
+ * quantized evaluation rounds it at every level), so a hit is exactly the value the search would compute.
+ * <p>
+ * Entries are 16 bytes in one direct ByteBuffer, no objects per entry: the value bits, then
+ * (key high bits | meta) ^ value bits. A torn write fails the check and reads as a miss, so the table needs no
+ * locks and can be shared by all search threads and by concurrent games. Entries are grouped in buckets of
+ * BUCKET_SIZE (one cache line); a store takes an empty slot or the same key, otherwise replaces the entry of the
+ * oldest search, shallowest first. Finders sharing a table salt their keys with their settings.
+ */
+public class TranspositionTable {
+    static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_SIZE = 4;
+    private static final int META_BITS = 12; // age 6 bits, depth 6 bits
+    private static final long META_MASK = (1L << META_BITS) - 1;
+    private static final int AGE_MASK = 0x3F;
+
+    private final ByteBuffer entries;
+    private final int mask;
+    private volatile int age;
+    private final LongAdder probeCnt = new LongAdder();
+    private final LongAdder hitCnt = new LongAdder();
+    private final LongAdder storeCnt = new LongAdder();
+    private final LongAdder replaceCnt = new LongAdder();
+
+    /**
+     * @param capacity number of entries, rounded up to a power of two
+     */
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, BUCKET_SIZE) - 1) << 1;
+        if ((long) size * ENTRY_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity is too large: " + capacity);
+        }
+        entries = ByteBuffer.allocateDirect(size * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        mask = size - 1;
+    }
+
+    /**
+     * @param megabytes up to 1024, the entry count is rounded down to a power of two
+     */
+    public static TranspositionTable ofMegabytes(int megabytes) {
+        long capacity = Long.highestOneBit(Math.min(1024, megabytes) * (1L << 20) / ENTRY_BYTES);
+        return new TranspositionTable((int) capacity);
+    }
+
+    /**
+     * @param salt separates finders with different weights or settings that share the table
+     */
+    static long key(GameState2 gameState, long salt) {
+        long key = mix(salt, gameState.board.longHashCode());
+        TetriminoWithPosition falling = gameState.fallingTetrimino;
+        key = mix(key, falling.getTetrimino().getType().ordinal() << 16 | falling.getTetrimino().getOrientation() << 12
+                | (falling.getTopRow() & 0x3F) << 6 | (falling.getLeftCol() & 0x3F));
+        key = mix(key, gameState.nextTetrimino == null ? -1 : gameState.nextTetrimino.ordinal());
+        key = mix(key, gameState.score);
+        key = mix(key, gameState.combo);
+        key = mix(key, gameState.round);
+        key = mix(key, gameState.skipCnt);
+        key = mix(key, gameState.linesCleared);
+        key = mix(key, gameState.possibleGarbage.get(0));
+        key = mix(key, Double.doubleToLongBits(gameState.prevStateEval));
+        key ^= key >>> 29;
+        return key == 0 ? 1 : key;
+    }
+
+    private static long mix(long key, long x) {
+        return (key ^ x) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Starts a new search, entries of older searches become the first candidates for replacement.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * @return stored value or NaN if there is none with at least the given depth
+     */
+    double get(long key, int depth) {
+        probeCnt.increment();
+        int bucket = (int) key & mask & ~(BUCKET_SIZE - 1);
+        for (int slot = bucket; slot < bucket + BUCKET_SIZE; slot++) {
+            long value = entries.getLong(slot * ENTRY_BYTES);
+            long check = entries.getLong(slot * ENTRY_BYTES + 8) ^ value;
+            if (matches(check, key)) {
+                if (getDepth(check) < depth) {
+                    break;
+                }
+                hitCnt.increment();
+                return Double.longBitsToDouble(value);
+            }
+        }
+        return Double.NaN;
+    }
+
+    void put(long key, double value, int depth) {
+        int bucket = (int) key & mask & ~(BUCKET_SIZE - 1);
+        int victim = -1;
+        int victimPriority = Integer.MAX_VALUE;
+        boolean replacing = true;
+        for (int slot = bucket; slot < bucket + BUCKET_SIZE; slot++) {
+            long storedValue = entries.getLong(slot * ENTRY_BYTES);
+            long storedCheck = entries.getLong(slot * ENTRY_BYTES + 8);
+            long check = storedCheck ^ storedValue;
+            if (matches(check, key) || (storedValue == 0 && storedCheck == 0)) {
+                victim = slot;
+                replacing = false;
+                break;
+            }
+            // older searches first, then shallower entries
+            int priority = (getAge(check) == age ? 1 << 8 : 0) | getDepth(check);
+            if (priority < victimPriority) {
+                victim = slot;
+                victimPriority = priority;
+            }
+        }
+        if (replacing) {
+            replaceCnt.increment();
+        }
+        storeCnt.increment();
+        long bits = Double.doubleToRawLongBits(value);
+        long meta = (long) age << 6 | Math.min(depth, 0x3F);
+        entries.putLong(victim * ENTRY_BYTES, bits);
+        entries.putLong(victim * ENTRY_BYTES + 8, ((key & ~META_MASK) | meta) ^ bits);
+    }
+
+    /**
+     * Compares the key bits above the meta, the bucket index covers some of the rest. Keys are never 0, so an
+     * empty slot doesn't match.
+     */
+    private static boolean matches(long check, long key) {
+        return (check & ~META_MASK) == (key & ~META_MASK) && check != 0;
+    }
+
+    private static int getAge(long check) {
+        return (int) (check >>> 6) & AGE_MASK;
+    }
+
+    private static int getDepth(long check) {
+        return (int) check & 0x3F;
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.capacity(); i += 8) {
+            entries.putLong(i, 0);
+        }
+        probeCnt.reset();
+        hitCnt.reset();
+        storeCnt.reset();
+        replaceCnt.reset();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getProbeCnt() {
+        return probeCnt.sum();
+    }
+
+    public long getHitCnt() {
+        return hitCnt.sum();
+    }
+
+    public long getStoreCnt() {
+        return storeCnt.sum();
+    }
+
+    public long getReplaceCnt() {
+        return replaceCnt.sum();
+    }
+
+    public double getHitRate() {
+        long probes = getProbeCnt();
+        return probes == 0 ? 0 : getHitCnt() / (double) probes;
+    }
+
+    @Override
+    public String toString() {
+        return "TranspositionTable{" +
+                "capacity=" + getCapacity() +
+                ", probeCnt=" + getProbeCnt() +
+                ", hitCnt=" + getHitCnt() +
+                ", storeCnt=" + getStoreCnt() +
+                ", replaceCnt=" + getReplaceCnt() +
+                ", hitRate=" + getHitRate() +
+                '}';
+    }
+}
@@ -14,6 +14,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
 import static tetris.Move.*;
+import static tetris.TetriminoType.*;
 
 public class AbstractBMFTest {
     protected BestMoveFinder bestMoveFinder;
@@ -46,6 +47,34 @@ public class AbstractBMFTest {
         return new Board(s);
     }
 
+    /**
+     * T falling over a T-slot with L next, the board most finder tests compare searches on.
+     */
+    public static GameState tSlotGameState(int skipCnt) {
+        Board board = newBoard("" +
+                "..........\n" +
+                "..........\n" +
+                "x.........\n" +
+                "xx...xx...\n" +
+                "xxx.xxxxx.\n" +
+                "xxxxxxxxx.");
+        return new GameState(board, board.newFallingTetrimino(T), L, 0, 1, skipCnt, Collections.singletonList(0));
+    }
+
+    /**
+     * S falling over a ragged stack with the given next piece, null for a chance node at the first level.
+     */
+    public static GameState raggedGameState(TetriminoType nextTetrimino) {
+        Board board = newBoard("" +
+                "..........\n" +
+                "..........\n" +
+                "....x.....\n" +
+                "xx.xx.....\n" +
+                "xxxxxx.xxx\n" +
+                "x.xxxxxxxx");
+        return new GameState(board, board.newFallingTetrimino(S), nextTetrimino, 0, 1, 0, Collections.singletonList(0));
+    }
+
     protected boolean isSimpleAction(List<Move> moves) {
         int pos = 0;
         while (pos < moves.size() && (moves.get(pos) == ROTATE_CW || moves.get(pos) == ROTATE_CCW)) {
@@ -0,0 +1,37 @@
+package logic;
+
+import org.testng.annotations.Test;
+import tetris.GameState;
+import tetris.Move;
+import tetris.logic.BeamSearchMoveFinder;
+import tetris.logic.BestMoveFinder;
+
+import java.util.List;
+
+import static logic.AbstractBMFTest.raggedGameState;
+import static logic.AbstractBMFTest.tSlotGameState;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static tetris.TetriminoType.*;
+
+@Test
+public class BeamSearchMoveFinderTest {
+
+    @Test
+    void wideTwoPlyBeamSameAsBestMoveFinder() {
+        for (int skipCnt : new int[]{0, 1}) {
+            GameState gameState = tSlotGameState(skipCnt);
+            BeamSearchMoveFinder beam = new BeamSearchMoveFinder(BestMoveFinder.BEST_PARAMETERS, new int[]{1000, 1000}, 1);
+            assertEquals(beam.findBestMoves(gameState), new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 1).findBestMoves(gameState));
+        }
+    }
+
+    @Test
+    void deepBeamIsDeterministic() {
+        GameState gameState = raggedGameState(I);
+        BeamSearchMoveFinder beam = new BeamSearchMoveFinder(BestMoveFinder.BEST_PARAMETERS, new int[]{10, 5, 3, 2}, 3);
+        List<Move> moves = beam.findBestMoves(gameState);
+        assertFalse(moves.isEmpty());
+        assertEquals(beam.findBestMoves(gameState), moves);
+    }
+}
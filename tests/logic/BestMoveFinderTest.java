@@ -2,16 +2,22 @@ package logic;
 
 import org.testng.annotations.Test;
 import tetris.Board;
+import tetris.GameState;
 import tetris.Move;
 import tetris.Tetrimino;
 import tetris.TetriminoWithPosition;
 import tetris.logic.BestMoveFinder;
 import tetris.logic.ParameterWeights;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static tetris.Move.*;
 import static tetris.TetriminoType.*;
 import static tetris.logic.EvaluationParameter.*;
@@ -1182,4 +1188,156 @@ public class BestMoveFinderTest extends AbstractBMFTest {
         List<Move> actualMoves = testBuilder.findBestMoves();
         assertFalse(actualMoves.size() == 1 && actualMoves.get(0) == SKIP);
     }
-}
\ No newline at end of file
+
+    @Test
+    void prefilterWithWideMarginKeepsBestMove() {
+        GameState gameState = tSlotGameState(0);
+        BestMoveFinder exact = BestMoveFinder.getBest();
+        BestMoveFinder filtered = BestMoveFinder.getBest().usePrefilter(0.25, Double.POSITIVE_INFINITY);
+        assertEquals(filtered.findBestMoves(gameState), exact.findBestMoves(gameState));
+        assertEquals(filtered.getNodeCnt(), exact.getNodeCnt());
+
+        BestMoveFinder narrow = BestMoveFinder.getBest().usePrefilter(0.25, 0);
+        narrow.findBestMoves(gameState);
+        assertTrue(narrow.getNodeCnt() < exact.getNodeCnt());
+    }
+
+    @Test
+    void parallelSameAsSequential() {
+        GameState gameState = tSlotGameState(1);
+        BestMoveFinder parallel = BestMoveFinder.getBest().useParallelism(4);
+        assertEquals(parallel.findBestMoves(gameState), BestMoveFinder.getBest().findBestMoves(gameState));
+    }
+
+    @Test
+    void parallelChanceNodesSameAsSequential() {
+        GameState gameState = raggedGameState(null);
+        List<Move> expected = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 10).findBestMoves(gameState);
+        for (int parallelism : new int[]{2, 7}) {
+            BestMoveFinder parallel = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 10).useParallelism(parallelism);
+            assertEquals(parallel.findBestMoves(gameState), expected);
+        }
+    }
+
+    @Test
+    void parallelWithTranspositionTableSameAsSequential() {
+        GameState gameState = raggedGameState(null);
+        List<Move> expected = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 10).findBestMoves(gameState);
+        BestMoveFinder parallel = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 10).useParallelism(4).useTranspositionTable(1);
+        assertEquals(parallel.findBestMoves(gameState), expected);
+        assertEquals(parallel.findBestMoves(gameState), expected);
+        assertTrue(parallel.getTranspositionTable().getHitCnt() > 0);
+    }
+
+    @Test
+    void anytimeReturnsDeepestFinishedSearch() {
+        GameState gameState = tSlotGameState(0);
+        AtomicLong ticks = new AtomicLong(); // one tick per node, so the deadline doesn't depend on the machine
+        BestMoveFinder anytime = BestMoveFinder.getBest().useClock(ticks::incrementAndGet);
+        assertEquals(anytime.findBestMoves(gameState, 0), new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 1).findBestMoves(gameState));
+        assertEquals(anytime.getLastCompletedWidths(), new int[0]);
+
+        anytime.useParallelism(2);
+        List<Move> moves = anytime.findBestMoves(gameState, () -> ticks.get() + 10_000);
+        assertEquals(anytime.getLastCompletedWidths(), new int[]{20});
+        assertEquals(moves, new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 20).findBestMoves(gameState));
+    }
+
+    @Test
+    void chancePruningSameMoves() {
+        GameState gameState = raggedGameState(null);
+        BestMoveFinder exact = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 10);
+        BestMoveFinder pruned = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 10).useChancePruning();
+        assertEquals(pruned.findBestMoves(gameState), exact.findBestMoves(gameState));
+        assertTrue(pruned.getNodeCnt() <= exact.getNodeCnt());
+    }
+
+    @Test
+    void adaptiveWidthExpandsCloseCandidates() {
+        GameState gameState = tSlotGameState(0);
+        BestMoveFinder fixed = BestMoveFinder.getBest();
+        BestMoveFinder wideGap = BestMoveFinder.getBest().useAdaptiveWidth(Double.POSITIVE_INFINITY, Long.MAX_VALUE);
+        assertEquals(wideGap.findBestMoves(gameState), fixed.findBestMoves(gameState));
+        assertEquals(wideGap.getNodeCnt(), fixed.getNodeCnt());
+
+        BestMoveFinder noGap = BestMoveFinder.getBest().useAdaptiveWidth(0, Long.MAX_VALUE);
+        noGap.findBestMoves(gameState);
+        assertTrue(noGap.getNodeCnt() < fixed.getNodeCnt());
+        BestMoveFinder noBudget = BestMoveFinder.getBest().useAdaptiveWidth(Double.POSITIVE_INFINITY, 0);
+        noBudget.findBestMoves(gameState);
+        assertEquals(noBudget.getNodeCnt(), noGap.getNodeCnt());
+    }
+
+    @Test
+    void selectiveExtensionDeepensVolatilePlacements() {
+        GameState gameState = tSlotGameState(0);
+        BestMoveFinder plain = BestMoveFinder.getBest();
+        List<Move> moves = plain.findBestMoves(gameState);
+        BestMoveFinder noBudget = BestMoveFinder.getBest().useSelectiveExtension(0);
+        assertEquals(noBudget.findBestMoves(gameState), moves);
+        assertEquals(noBudget.getNodeCnt(), plain.getNodeCnt());
+        assertEquals(noBudget.getExtendedCnt(), 0);
+
+        BestMoveFinder extended = BestMoveFinder.getBest().useSelectiveExtension(Long.MAX_VALUE);
+        assertFalse(extended.findBestMoves(gameState).isEmpty());
+        assertTrue(extended.getExtendedCnt() > 0);
+        assertTrue(extended.getNodeCnt() > plain.getNodeCnt());
+    }
+
+    @Test
+    void stopAbortsOnlyTheRunningSearch() {
+        GameState gameState = tSlotGameState(0);
+        BestMoveFinder finder = BestMoveFinder.getBest();
+        finder.stop();
+        assertNull(finder.findBestMoves(gameState));
+        assertEquals(finder.findBestMoves(gameState), BestMoveFinder.getBest().findBestMoves(gameState));
+        finder.stop();
+        assertNull(finder.findBestMoves(gameState, Long.MAX_VALUE));
+
+        AtomicLong ticks = new AtomicLong(); // the clock is read at every node once the first search has finished
+        finder.useClock(() -> {
+            if (ticks.incrementAndGet() == 3_000) {
+                finder.stop();
+            }
+            return 0;
+        });
+        List<Move> moves = finder.findBestMoves(gameState, Long.MAX_VALUE);
+        int[] widths = finder.getLastCompletedWidths();
+        assertEquals(widths.length, 1);
+        assertEquals(moves, new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, widths[0]).findBestMoves(gameState));
+    }
+
+    @Test
+    void subtreeReuseContinuesPredictedState() {
+        AtomicLong ticks = new AtomicLong();
+        BestMoveFinder plain = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 1).useClock(ticks::incrementAndGet);
+        BestMoveFinder reusing = new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 1).useSubtreeReuse().useClock(ticks::incrementAndGet);
+        Board board = new Board(Board.STANDARD_HEIGHT, 6); // narrow, so the whole schedule is quick
+        GameState gameState = new GameState(board, board.newFallingTetrimino(T), L, 0, 1, 0, Collections.singletonList(0));
+        List<Move> moves = reusing.findBestMoves(gameState, Long.MAX_VALUE);
+        assertEquals(reusing.getLastCompletedWidths(), new int[]{1, 8});
+
+        board = board.moveAndDrop(gameState.getFallingTetrimino(), moves, 0, 1).getBoard();
+        GameState predicted = new GameState(board, board.newFallingTetrimino(L), O, 0, 2, 0, Collections.singletonList(0));
+        assertNotNull(plain.findBestMoves(predicted, () -> ticks.get())); // no time for more than the first pass
+        assertEquals(plain.getLastCompletedWidths(), new int[0]);
+        moves = reusing.findBestMoves(predicted, () -> ticks.get());
+        assertEquals(reusing.getLastCompletedWidths(), new int[]{8});
+        assertEquals(moves, new BestMoveFinder(BestMoveFinder.BEST_PARAMETERS, 8).findBestMoves(predicted));
+        assertEquals(reusing.getReuseHitRate(), 0.5);
+    }
+
+    @Test
+    void samePlacementStatesAreSearchedOnce() {
+        Board board = newBoard("" +
+                "..........\n" +
+                "..........\n" +
+                "...xxxxxxx\n" +
+                "...xxxxxxx");
+        GameState gameState = new GameState(board, board.newFallingTetrimino(T), O, 0, 1, 0, Collections.singletonList(0));
+        BestMoveFinder finder = BestMoveFinder.getBest();
+        List<Move> moves = finder.findBestMoves(gameState);
+        assertTrue(finder.getDuplicateCnt() > 0);
+        assertEquals(BestMoveFinder.getBest().useParallelism(2).findBestMoves(gameState), moves);
+    }
+}
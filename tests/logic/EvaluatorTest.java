@@ -2,11 +2,16 @@ package logic;
 
 import org.testng.annotations.Test;
 import tetris.Board;
+import tetris.logic.BestMoveFinder;
+import tetris.logic.BoardBatch;
 import tetris.logic.EvaluationState;
 import tetris.logic.Evaluator;
 import tetris.logic.ParameterWeights;
+import tetris.logic.QuantizedEvaluator;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static tetris.logic.EvaluationParameter.*;
 
 @Test
 public class EvaluatorTest {
@@ -293,6 +298,102 @@ public class EvaluatorTest {
         assertEquals(evaluation.iPatternFactor, 3);
     }
 
+    @Test
+    void scoreOnlySameAsFull() {
+        Evaluator evaluator = new Evaluator(BestMoveFinder.BEST_PARAMETERS);
+        Board board = board("" +
+                "....x.....\n" +
+                "xx.xx.....\n" +
+                "xxxxxx.xxx\n" +
+                "x.xxxxxxxx"
+        );
+        assertEquals(
+                evaluator.evaluate(board, 4, 1, 7.5, 1, 2, false, 10),
+                evaluator.getEvaluation(board, 4, 1, 7.5, 1, 2, false, 10).getEvaluation()
+        );
+        assertEquals(
+                evaluator.evaluate(board, 0, 0, -3, 0, 1, true, 10),
+                evaluator.getEvaluation(board, 0, 0, -3, 0, 1, true, 10).getEvaluation()
+        );
+    }
+
+    @Test
+    void sparseWeightsSameAsFull() {
+        Board board = board("" +
+                "..x.......\n" +
+                "...xxxxxxx\n" +
+                "x.xxxxxxxx"
+        );
+        for (ParameterWeights weights : new ParameterWeights[]{
+                ParameterWeights.zero().put(SCORE, -1),
+                ParameterWeights.zero().put(T_SPIN_PATTERN, -3).put(CELLS_ABOVE_TOP, 1),
+                ParameterWeights.zero().put(HEIGHT, 1).put(HEIGHT_POW, 1)
+        }) {
+            Evaluator sparse = new Evaluator(weights);
+            assertEquals(
+                    sparse.evaluate(board, 3, 1, 0, 0, 2, false, 5),
+                    sparse.getEvaluation(board, 3, 1, 0, 0, 2, false, 5).getEvaluation()
+            );
+        }
+    }
+
+    @Test
+    void batchSameAsSingle() {
+        Evaluator evaluator = new Evaluator(BestMoveFinder.BEST_PARAMETERS);
+        Board[] boards = {
+                board("" +
+                        "..x.......\n" +
+                        "...xxxxxxx\n" +
+                        "x.xxxxxxxx"
+                ),
+                board("" +
+                        "....x.....\n" +
+                        "xx.xx.....\n" +
+                        "xxxxxx.xxx\n" +
+                        "x.xxxxxxxx"
+                ),
+                board("" +
+                        "..........\n" +
+                        ".x........\n" +
+                        "xxxxxxxxx.\n" +
+                        "xxxxxxxxx."
+                ),
+        };
+        BoardBatch batch = new BoardBatch(Board.STANDARD_HEIGHT, boards[0].getWidth());
+        for (int i = 0; i < boards.length; i++) {
+            batch.add(boards[i], i, 1, 2.5, 0, i, false, 7);
+        }
+        double[] evaluations = new double[batch.size()];
+        evaluator.evaluateBatch(batch, evaluations);
+        for (int i = 0; i < boards.length; i++) {
+            assertEquals(evaluations[i], evaluator.getEvaluation(boards[i], i, 1, 2.5, 0, i, false, 7).getEvaluation());
+        }
+    }
+
+    @Test
+    void quantizedCloseToDouble() {
+        QuantizedEvaluator quantized = new QuantizedEvaluator(BestMoveFinder.BEST_PARAMETERS);
+        Evaluator evaluator = new Evaluator(BestMoveFinder.BEST_PARAMETERS);
+        Board board = board("" +
+                "....x.....\n" +
+                "xx.xx.....\n" +
+                "xxxxxx.xxx\n" +
+                "x.xxxxxxxx"
+        );
+        long prev = 3 * QuantizedEvaluator.SCALE;
+        double expected = evaluator.evaluate(board, 4, 1, 3, 1, 2, false, 10);
+        double actual = QuantizedEvaluator.toDouble(quantized.evaluate(board, 4, 1, prev, 1, 2, false, 10));
+        assertEquals(actual, expected, 0.05);
+        assertEquals(
+                quantized.evaluate(board, 4, 1, prev, 1, 2, false, 10),
+                quantized.calcEvaluation(quantized.evaluateStatic(board, 4, 1, 1, 2), prev, false, 10)
+        );
+        long lostEarly = quantized.evaluate(board, 0, 0, 0, 0, 0, true, 10);
+        long lostLate = quantized.evaluate(board, 0, 0, 0, 0, 0, true, 11);
+        assertTrue(lostLate < lostEarly);
+        assertTrue(lostLate > quantized.evaluate(board, 0, 0, prev, 0, 0, false, 11));
+    }
+
     //--------- utils
 
     private void checkSemiTSpinPattern(Board board, boolean expected) {
@@ -0,0 +1,56 @@
+package logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+import tetris.DropResult;
+import tetris.GameState;
+import tetris.Move;
+import tetris.logic.BestMoveFinder;
+import tetris.logic.MctsMoveFinder;
+
+import java.util.Collections;
+import java.util.List;
+
+import static logic.AbstractBMFTest.newBoard;
+import static org.testng.Assert.*;
+import static tetris.TetriminoType.*;
+
+@Test
+public class MctsMoveFinderTest {
+    private final Board board = newBoard("" +
+            "..........\n" +
+            "..........\n" +
+            "x.........\n" +
+            "xx...xx...\n" +
+            "xxx.xxxxx.\n" +
+            "xxxxxxxxx.");
+    private final GameState gameState = new GameState(board, board.newFallingTetrimino(T), L, 0, 1, 0, Collections.singletonList(0));
+
+    @Test
+    void sameMovesForSameIterations() {
+        List<Move> moves = new MctsMoveFinder(BestMoveFinder.BEST_PARAMETERS, 200).findBestMoves(gameState);
+        assertFalse(moves.isEmpty());
+        assertEquals(new MctsMoveFinder(BestMoveFinder.BEST_PARAMETERS, 200).findBestMoves(gameState), moves);
+    }
+
+    @Test
+    void reusesSubtreeOfChosenMove() {
+        MctsMoveFinder mcts = new MctsMoveFinder(BestMoveFinder.BEST_PARAMETERS, 300);
+        List<Move> moves = mcts.findBestMoves(gameState);
+        assertEquals(mcts.getLastReusedVisitsCnt(), 0);
+
+        DropResult dropResult = board.moveAndDrop(gameState.getFallingTetrimino(), moves, 0, 1);
+        Board newBoard = dropResult.getBoard();
+        GameState next = new GameState(newBoard, newBoard.newFallingTetrimino(L), I, dropResult.getCombo(), 2, dropResult.getSkipAdded(), Collections.singletonList(0));
+        mcts.findBestMoves(next);
+        assertTrue(mcts.getLastReusedVisitsCnt() > 0);
+    }
+
+    @Test
+    void threadsStopAtDeadline() {
+        MctsMoveFinder mcts = new MctsMoveFinder(BestMoveFinder.BEST_PARAMETERS, 0).useThreads(2);
+        assertFalse(mcts.findBestMoves(gameState, System.nanoTime() + 50_000_000L).isEmpty());
+        assertTrue(mcts.getLastIterationsCnt() > 0);
+        assertFalse(mcts.findBestMoves(gameState, System.nanoTime()).isEmpty());
+    }
+}
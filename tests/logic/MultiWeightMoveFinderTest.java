@@ -0,0 +1,44 @@
+package logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+import tetris.GameState;
+import tetris.TetriminoWithPosition;
+import tetris.logic.BestMoveFinder;
+import tetris.logic.MultiWeightMoveFinder;
+import tetris.logic.ParameterWeights;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static tetris.TetriminoType.*;
+import static tetris.logic.EvaluationParameter.*;
+
+@Test
+public class MultiWeightMoveFinderTest {
+    @Test
+    void sameAsBestMoveFinder() {
+        List<ParameterWeights> weights = Arrays.asList(
+                BestMoveFinder.BEST_PARAMETERS,
+                new ParameterWeights(BestMoveFinder.BEST_PARAMETERS).put(HOLE_CNT, 1).put(PREV_STATE, 0.3),
+                BestMoveFinderTest.HEIGHT_ONLY
+        );
+        Board board = AbstractBMFTest.newBoard("" +
+                "..........\n" +
+                "..........\n" +
+                "x.........\n" +
+                "xx...xx...\n" +
+                "xxx.xxxxx.\n" +
+                "xxxxxxxxx.");
+        TetriminoWithPosition fallingTetrimino = board.newFallingTetrimino(T);
+        GameState gameState = new GameState(board, fallingTetrimino, L, 0, 1, 0, Collections.singletonList(0));
+        for (int oneMoreLevelNodesCnt : new int[]{1, 5}) {
+            List<?> actual = new MultiWeightMoveFinder(weights, oneMoreLevelNodesCnt).findBestMoves(gameState);
+            for (int i = 0; i < weights.size(); i++) {
+                assertEquals(actual.get(i), new BestMoveFinder(weights.get(i), oneMoreLevelNodesCnt).findBestMoves(gameState));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+import tetris.GameState;
+import tetris.logic.BestMoveFinder;
+import tetris.logic.Ponderer;
+
+import java.util.Collections;
+
+import static logic.AbstractBMFTest.newBoard;
+import static org.testng.Assert.*;
+import static tetris.TetriminoType.*;
+
+@Test
+public class PondererTest {
+    private final Board board = newBoard("" +
+            "..........\n" +
+            "..........\n" +
+            "x.........\n" +
+            "xx...xx...\n" +
+            "xxx.xxxxx.\n" +
+            "xxxxxxxxx.");
+    private final GameState predicted = new GameState(board, board.newFallingTetrimino(T), null, 0, 2, 0, Collections.singletonList(0));
+
+    @Test
+    void returnsPonderedMovesOfPredictedState() throws InterruptedException {
+        Ponderer ponderer = new Ponderer(BestMoveFinder.getBest(), 2, 0); // only the first pass, it has no deadline
+        assertNull(ponderer.take(predicted, 0));
+        assertEquals(ponderer.getMissCnt(), 0);
+
+        ponderer.ponder(predicted);
+        while (ponderer.isPondering()) {
+            Thread.sleep(1);
+        }
+        GameState actual = new GameState(board, board.newFallingTetrimino(T), L, 0, 2, 0, Collections.singletonList(0));
+        assertFalse(ponderer.take(actual, 0).isEmpty());
+        assertEquals(ponderer.getHitCnt(), 1);
+    }
+
+    @Test
+    void missesAfterGarbage() {
+        Ponderer ponderer = new Ponderer(BestMoveFinder.getBest(), 2, 10_000);
+        ponderer.ponder(predicted);
+        Board withGarbage = new Board(board);
+        withGarbage.addPenalty();
+        GameState actual = new GameState(withGarbage, withGarbage.newFallingTetrimino(T), L, 0, 2, 0, Collections.singletonList(0));
+        assertNull(ponderer.take(actual, 0));
+        assertEquals(ponderer.getMissCnt(), 1);
+        assertEquals(ponderer.getHitCnt(), 0);
+    }
+}
@@ -0,0 +1,63 @@
+package logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+import tetris.GameState;
+import tetris.logic.TimeManager;
+
+import java.util.Collections;
+
+import static logic.AbstractBMFTest.newBoard;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static tetris.TetriminoType.*;
+
+@Test
+public class TimeManagerTest {
+    private final GameState low = gameState(newBoard("" +
+            "..........\n" +
+            "xx..xxxxx.\n" +
+            "xxx.xxxxxx"), 0);
+    private final GameState high = gameState(newBoard("" +
+            "....x.....\n" +
+            "....x.....\n" +
+            "....x.....\n" +
+            "...xx.....\n" +
+            "...xx.....\n" +
+            "...xxx....\n" +
+            "...xxx....\n" +
+            "..xxxx....\n" +
+            "..xxxxx...\n" +
+            "..xxxxx...\n" +
+            "..xxxxxx..\n" +
+            "..xxxxxx..\n" +
+            "..xxxxxxx.\n" +
+            ".xxxxxxxx.\n" +
+            "xx.xxxxxxx"), 1);
+
+    private static GameState gameState(Board board, int garbage) {
+        return new GameState(board, board.newFallingTetrimino(T), L, 0, 1, 0, Collections.singletonList(garbage));
+    }
+
+    @Test
+    void spendsMoreOnDangerousAndCloseMoves() {
+        TimeManager timeManager = new TimeManager(10000, 500, null);
+        assertEquals(timeManager.allocate(10000, low, 10, 1), 0);
+        long normal = timeManager.allocate(10000, low, 10, 30);
+        assertEquals(normal, 1000);
+        assertTrue(timeManager.allocate(10000, high, 10, 30) > normal);
+        assertTrue(timeManager.allocate(10000, low, 0.5, 30) > normal);
+        assertTrue(timeManager.allocate(10000, low, 100, 30) < normal);
+        assertEquals(timeManager.allocate(500, high, 0.5, 30), (500 - TimeManager.RESERVE_MILLIS) / 2);
+    }
+
+    @Test
+    void reservesTimeLostOutsideSearch() {
+        TimeManager timeManager = new TimeManager(10000, 500, null);
+        long before = timeManager.allocate(1000, low, 10, 30);
+        timeManager.finish(1000, 400);
+        // the bank should be 1100, 300 ms went elsewhere
+        assertEquals(timeManager.allocate(800, low, 10, 30), (800 - TimeManager.RESERVE_MILLIS - 300) / 2);
+        assertTrue(before > (800 - TimeManager.RESERVE_MILLIS - 300) / 2);
+    }
+}
@@ -0,0 +1,46 @@
+package tetris.logic;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class ColumnKernelsTest {
+    private final ColumnKernels scalar = new ScalarColumnKernels();
+    private final ColumnKernels selected = ColumnKernels.select();
+
+    @Test
+    void scalar() {
+        int[] heights = padded(3, 0, 5, 5, 1, 0, 2, 7, 7, 4);
+        assertEquals(scalar.maxColumnHeight(heights, 10), 7);
+        assertEquals(scalar.flatRate(heights, 10), 3 + 5 + 0 + 4 + 1 + 2 + 5 + 0 + 3);
+        assertEquals(scalar.holeCnt(heights, 10), 1 + 1);
+        assertEquals(scalar.monotonicRate(heights, 10), 5 + 0 + 0 + 0 + 3);
+    }
+
+    @Test
+    void selectedSameAsScalar() {
+        Random rnd = new Random(1);
+        for (int width : new int[]{10, 4, 7, 17, 33}) {
+            for (int iter = 0; iter < 200; iter++) {
+                int[] h = new int[width];
+                for (int i = 0; i < width; i++) {
+                    h[i] = rnd.nextInt(22);
+                }
+                int[] heights = padded(h);
+                assertEquals(selected.maxColumnHeight(heights, width), scalar.maxColumnHeight(heights, width));
+                assertEquals(selected.flatRate(heights, width), scalar.flatRate(heights, width));
+                assertEquals(selected.holeCnt(heights, width), scalar.holeCnt(heights, width));
+                assertEquals(selected.monotonicRate(heights, width), scalar.monotonicRate(heights, width));
+            }
+        }
+    }
+
+    private static int[] padded(int... h) {
+        int[] r = ColumnKernels.padded(h.length);
+        System.arraycopy(h, 0, r, 1, h.length);
+        return r;
+    }
+}
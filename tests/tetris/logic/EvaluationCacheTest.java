@@ -0,0 +1,91 @@
+package tetris.logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+
+import static org.testng.Assert.*;
+import static tetris.logic.PossibleGarbageCalculatorTest.board;
+
+@Test
+public class EvaluationCacheTest {
+    @Test
+    void getPut() {
+        EvaluationCache cache = new EvaluationCache(16);
+        Board board = board("" +
+                "..x.......\n" +
+                "...xxxxxxx\n" +
+                "x.xxxxxxxx"
+        );
+        long boardHash = board.longHashCode();
+        int fields = EvaluationCache.fields(3, 1);
+        BoardFeatures tail = BoardFeatures.scratch(board);
+        tail.monotonicRate = 5;
+        tail.iPatternFactor = 2;
+        tail.tSpinPattern = true;
+        tail.semiTSpinPattern = false;
+        assertTrue(Double.isNaN(cache.get(boardHash, fields, tail)));
+        cache.put(boardHash, fields, -12.5, tail);
+
+        BoardFeatures hit = new BoardFeatures(board.getHeight(), board.getWidth());
+        assertEquals(cache.get(boardHash, fields, hit), -12.5);
+        assertEquals(hit.monotonicRate, 5);
+        assertEquals(hit.iPatternFactor, 2);
+        assertTrue(hit.tSpinPattern);
+        assertFalse(hit.semiTSpinPattern);
+        assertTrue(Double.isNaN(cache.get(boardHash, EvaluationCache.fields(3, 2), hit)));
+        assertTrue(Double.isNaN(cache.get(boardHash, EvaluationCache.fields(4, 1), hit)));
+        assertTrue(Double.isNaN(cache.get(boardHash + 1, fields, hit)));
+        assertEquals(cache.getHitCnt(), 1);
+        assertEquals(cache.getMissCnt(), 4);
+        assertEquals(EvaluationCache.fields(-1, 0), EvaluationCache.NOT_CACHED);
+    }
+
+    @Test
+    void sameAsUncached() {
+        Evaluator evaluator = new Evaluator(BestMoveFinder.BEST_PARAMETERS);
+        EvaluationCache cache = new EvaluationCache(16);
+        Board board = board("" +
+                "....x.....\n" +
+                "xx.xx.....\n" +
+                "xxxxxx.xxx\n" +
+                "x.xxxxxxxx"
+        );
+        double expected = evaluator.getEvaluation(board, 4, 1, 7.5, 0, 1, false, 10).evaluation;
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, 7.5, 0, 1, false, 10), expected);
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, 7.5, 0, 1, false, 10), expected);
+        assertEquals(cache.getHitCnt(), 1);
+
+        double otherPrevState = evaluator.getEvaluation(board, 4, 1, -3, 0, 1, false, 10).evaluation;
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, -3, 0, 1, false, 10), otherPrevState);
+        assertEquals(cache.getHitCnt(), 2);
+
+        double otherSkipAndLines = evaluator.getEvaluation(board, 4, 1, 7.5, 1, 2, false, 10).evaluation;
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, 7.5, 1, 2, false, 10), otherSkipAndLines);
+        assertEquals(cache.getHitCnt(), 3);
+    }
+
+    @Test
+    void quantizedSameAsUncached() {
+        QuantizedEvaluator evaluator = new QuantizedEvaluator(BestMoveFinder.BEST_PARAMETERS);
+        EvaluationCache cache = EvaluationCache.ofQuantized(16);
+        Board board = board("" +
+                "....x.....\n" +
+                "xx.xx.....\n" +
+                "xxxxxx.xxx\n" +
+                "x.xxxxxxxx"
+        );
+        long expected = evaluator.evaluate(board, 4, 1, 7000, 0, 1, false, 10);
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, 7000, 0, 1, false, 10), expected);
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, 7000, 0, 1, false, 10), expected);
+        assertEquals(cache.getHitCnt(), 1);
+
+        long lost = evaluator.evaluate(board, 4, 1, -3000, 0, 1, true, 12);
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, -3000, 0, 1, true, 12), lost);
+        assertEquals(cache.getHitCnt(), 2);
+
+        long otherLinesClass = evaluator.evaluate(board, 4, 1, 7000, 0, 2, false, 10);
+        assertEquals(evaluator.getCachedEvaluation(cache, board, 4, 1, 7000, 0, 2, false, 10), otherLinesClass);
+        assertEquals(cache.getHitCnt(), 2);
+        assertTrue(cache.isQuantized());
+    }
+}
@@ -0,0 +1,89 @@
+package tetris.logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+import tetris.TetriminoType;
+import tetris.TetriminoWithPosition;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+@Test
+public class NodeArenaTest {
+
+    @Test
+    void sameSearchAsObjectBfs() {
+        Random rnd = new Random(1);
+        NodeArena arena = NodeArena.push();
+        try {
+            for (int iter = 0; iter < 200; iter++) {
+                Board board = new Board(Board.STANDARD_HEIGHT, Board.STANDARD_WIDTH);
+                int filledRows = rnd.nextInt(12);
+                for (int row = board.getHeight() - filledRows; row < board.getHeight(); row++) {
+                    for (int col = 0; col < board.getWidth(); col++) {
+                        if (rnd.nextInt(10) < 7) {
+                            board.set(row, col, true);
+                        }
+                    }
+                }
+                for (TetriminoType type : TetriminoType.ALL) {
+                    TetriminoWithPosition falling = board.newFallingTetrimino(type);
+                    if (board.collides(falling)) {
+                        continue;
+                    }
+                    TetriminoWithPosition[][][] bfs = objectBfs(board, falling);
+                    assertTrue(Arrays.deepEquals(PathFinder.bfs(board, falling), bfs));
+                    List<TetriminoWithPosition> expected = BestMoveFinder.getAvailableFinalPositions(board, falling, bfs);
+                    arena.findPlacements(board, falling);
+                    assertEquals(arena.getPlacementsCnt(), expected.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        TetriminoWithPosition position = expected.get(i);
+                        assertEquals(arena.getPlacement(i), position);
+                        assertEquals(arena.getLastMove(i), PathFinder.getPrevMove(position,
+                                bfs[position.getTopRow()][position.getLeftCol()][position.getTetrimino().getOrientation()]));
+                        assertEquals(arena.findMoves(i), PathFinder.findMoves(falling, bfs, position));
+                    }
+                }
+            }
+        } finally {
+            arena.pop();
+        }
+    }
+
+    /**
+     * The search {@link PathFinder} had before it shared its buffers with the arena, as a reference.
+     */
+    private static TetriminoWithPosition[][][] objectBfs(Board board, TetriminoWithPosition t) {
+        TetriminoWithPosition[][][] from = new TetriminoWithPosition[board.getHeight()][board.getWidth()][t.getTetrimino().getOrientationsCnt()];
+        from[t.getTopRow()][t.getLeftCol()][t.getTetrimino().getOrientation()] = t;
+        Queue<TetriminoWithPosition> q = new ArrayDeque<>();
+        q.add(t);
+        while (!q.isEmpty()) {
+            t = q.remove();
+            for (TetriminoWithPosition p : Arrays.asList(t.rotateCW(), t.rotateCCW(), t.moveLeft(), t.moveRight(), t.moveDown())) {
+                if (board.collides(p) || from[p.getTopRow()][p.getLeftCol()][p.getTetrimino().getOrientation()] != null) {
+                    continue;
+                }
+                from[p.getTopRow()][p.getLeftCol()][p.getTetrimino().getOrientation()] = t;
+                q.add(p);
+            }
+        }
+        return from;
+    }
+
+    @Test
+    void nestedNodesGetOwnArenas() {
+        NodeArena outer = NodeArena.push();
+        NodeArena inner = NodeArena.push();
+        assertNotSame(inner, outer);
+        inner.pop();
+        assertSame(NodeArena.push(), inner);
+        inner.pop();
+        outer.pop();
+    }
+}
@@ -0,0 +1,126 @@
+package tetris.logic;
+
+import org.testng.annotations.Test;
+import tetris.Board;
+import tetris.GameState;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.*;
+import static tetris.TetriminoType.*;
+import static tetris.logic.EvaluationParameter.*;
+import static tetris.logic.PossibleGarbageCalculatorTest.board;
+
+@Test
+public class TranspositionTableTest {
+    @Test
+    void getPut() {
+        long key = 42L << 40;
+        TranspositionTable table = new TranspositionTable(16);
+        table.put(key, -3.5, 2);
+        assertEquals(table.get(key, 2), -3.5);
+        assertEquals(table.get(key, 1), -3.5);
+        assertTrue(Double.isNaN(table.get(key, 3)));
+        assertTrue(Double.isNaN(table.get(key + (1L << 40), 1)));
+        table.put(key, 1, 1);
+        assertEquals(table.get(key, 1), 1.0);
+        assertEquals(table.getReplaceCnt(), 0);
+    }
+
+    @Test
+    void replacesOlderSearchFirst() {
+        TranspositionTable table = new TranspositionTable(4); // keys differ in high bits and share the bucket
+        table.put(1L << 40, 1, 2);
+        table.newSearch();
+        table.put(2L << 40, 2, 1);
+        table.put(3L << 40, 3, 1);
+        table.put(4L << 40, 4, 1);
+        table.put(5L << 40, 5, 2);
+        assertTrue(Double.isNaN(table.get(1L << 40, 1)));
+        assertEquals(table.get(5L << 40, 1), 5.0);
+        table.put(6L << 40, 6, 2);
+        assertEquals(table.get(5L << 40, 1), 5.0);
+        assertTrue(Double.isNaN(table.get(2L << 40, 1)));
+        assertEquals(table.getReplaceCnt(), 2);
+    }
+
+    @Test
+    void keyCoversPrevStateEval() {
+        Board board = board("" +
+                "x.........\n" +
+                "xxx.xxxxx."
+        );
+        GameState2 state = new GameState2(board, board.newFallingTetrimino(T), L, 0, 0, 1, 3.5, 0, Collections.singletonList(0), 0);
+        GameState2 otherPrev = new GameState2(board, board.newFallingTetrimino(T), L, 0, 0, 1, -7, 0, Collections.singletonList(0), 0);
+        GameState2 otherRound = new GameState2(board, board.newFallingTetrimino(T), L, 0, 0, 2, 3.5, 0, Collections.singletonList(0), 0);
+        assertNotEquals(TranspositionTable.key(otherPrev, 1), TranspositionTable.key(state, 1));
+        assertNotEquals(TranspositionTable.key(otherRound, 1), TranspositionTable.key(state, 1));
+        assertNotEquals(TranspositionTable.key(state, 2), TranspositionTable.key(state, 1));
+    }
+
+    @Test
+    void sameMovesAsWithout() {
+        Board board = board("" +
+                "..........\n" +
+                "x.........\n" +
+                "xx...xx...\n" +
+                "xxx.xxxxx.\n" +
+                "xxxxxxxxx."
+        );
+        GameState gameState = new GameState(board, board.newFallingTetrimino(T), L, 0, 1, 1, Collections.singletonList(0));
+        BestMoveFinder finder = BestMoveFinder.getBest().useTranspositionTable(1);
+        assertEquals(finder.findBestMoves(gameState), BestMoveFinder.getBest().findBestMoves(gameState));
+        assertTrue(finder.getTranspositionTable().getStoreCnt() > 0);
+        assertEquals(finder.findBestMoves(gameState), BestMoveFinder.getBest().findBestMoves(gameState));
+        assertTrue(finder.getTranspositionTable().getHitCnt() > 0);
+
+        ParameterWeights heightOnly = ParameterWeights.zero().put(HEIGHT, 1).put(HEIGHT_POW, 1);
+        BestMoveFinder other = new BestMoveFinder(heightOnly, 1).useTranspositionTable(finder.getTranspositionTable());
+        assertEquals(other.findBestMoves(gameState), new BestMoveFinder(heightOnly, 1).findBestMoves(gameState));
+    }
+
+    @Test
+    void quantizedHitsAreSearchedValues() {
+        Board board = board("" +
+                "..........\n" +
+                "x.........\n" +
+                "xx...xx...\n" +
+                "xxx.xxxxx.\n" +
+                "xxxxxxxxx."
+        );
+        GameState gameState = new GameState(board, board.newFallingTetrimino(T), L, 0, 1, 1, Collections.singletonList(0));
+        BestMoveFinder plain = BestMoveFinder.getBest().useQuantizedEvaluation();
+        BestMoveFinder finder = BestMoveFinder.getBest().useQuantizedEvaluation().useTranspositionTable(1);
+        assertEquals(finder.findBestMoves(gameState), plain.findBestMoves(gameState));
+        assertEquals(finder.findBestMoves(gameState), plain.findBestMoves(gameState));
+        assertTrue(finder.getTranspositionTable().getHitCnt() > 0);
+    }
+
+    @Test
+    void concurrentWritesNeverReadTorn() throws InterruptedException {
+        TranspositionTable table = new TranspositionTable(64);
+        Thread[] threads = new Thread[4];
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int t = 0; t < threads.length; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random rnd = new Random(seed);
+                for (int i = 0; i < 200_000; i++) {
+                    long key = (rnd.nextInt(256) + 1L) * 0x9E3779B97F4A7C15L;
+                    double value = table.get(key, 1);
+                    if (!Double.isNaN(value) && value != key % 1000) {
+                        failed.set(true);
+                    }
+                    table.put(key, key % 1000, 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(failed.get());
+    }
+}
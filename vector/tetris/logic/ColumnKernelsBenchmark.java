@@ -0,0 +1,57 @@
+package tetris.logic;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar vs Vector API column kernels on random standard-width boards. Run with
+ * --add-modules jdk.incubator.vector, e.g. java --add-modules jdk.incubator.vector -cp ... org.openjdk.jmh.Main ColumnKernelsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ColumnKernelsBenchmark {
+    private static final int WIDTH = 10;
+    private static final int BOARDS_CNT = 1024;
+
+    private final ColumnKernels scalar = new ScalarColumnKernels();
+    private final ColumnKernels vector = new VectorColumnKernels();
+    private int[][] heights;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(1);
+        heights = new int[BOARDS_CNT][];
+        for (int b = 0; b < BOARDS_CNT; b++) {
+            int[] h = heights[b] = ColumnKernels.padded(WIDTH);
+            for (int col = 1; col <= WIDTH; col++) {
+                h[col] = rnd.nextInt(16);
+            }
+        }
+    }
+
+    @Benchmark
+    public void scalar(Blackhole blackhole) {
+        run(scalar, blackhole);
+    }
+
+    @Benchmark
+    public void vector(Blackhole blackhole) {
+        run(vector, blackhole);
+    }
+
+    private void run(ColumnKernels kernels, Blackhole blackhole) {
+        for (int[] h : heights) {
+            blackhole.consume(kernels.maxColumnHeight(h, WIDTH));
+            blackhole.consume(kernels.flatRate(h, WIDTH));
+            blackhole.consume(kernels.holeCnt(h, WIDTH));
+            blackhole.consume(kernels.monotonicRate(h, WIDTH));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package tetris.logic;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ColumnKernels} on the Vector API with the preferred species of the CPU. Loads are unmasked, they rely on
+ * the trailing padding of the heights, only the reductions are masked. Needs --add-modules jdk.incubator.vector
+ * at compile and run time, {@link ColumnKernels#select} falls back to the scalar kernels without it.
+ */
+class VectorColumnKernels implements ColumnKernels {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    VectorColumnKernels() {
+        if (SPECIES.length() > MAX_LANES) {
+            throw new IllegalStateException("unsupported species " + SPECIES);
+        }
+    }
+
+    @Override
+    public int maxColumnHeight(int[] heights, int width) {
+        int r = 0;
+        for (int i = 0; i < width; i += SPECIES.length()) {
+            IntVector h = IntVector.fromArray(SPECIES, heights, i + 1);
+            r = Math.max(r, h.reduceLanes(VectorOperators.MAX, SPECIES.indexInRange(i, width)));
+        }
+        return r;
+    }
+
+    @Override
+    public int flatRate(int[] heights, int width) {
+        int r = 0;
+        for (int i = 0; i < width - 1; i += SPECIES.length()) {
+            IntVector h1 = IntVector.fromArray(SPECIES, heights, i + 1);
+            IntVector h2 = IntVector.fromArray(SPECIES, heights, i + 2);
+            r += h1.sub(h2).abs().reduceLanes(VectorOperators.ADD, SPECIES.indexInRange(i, width - 1));
+        }
+        return r;
+    }
+
+    @Override
+    public int holeCnt(int[] heights, int width) {
+        int r = 0;
+        for (int i = 0; i < width; i += SPECIES.length()) {
+            IntVector left = IntVector.fromArray(SPECIES, heights, i);
+            IntVector mid = IntVector.fromArray(SPECIES, heights, i + 1);
+            IntVector right = IntVector.fromArray(SPECIES, heights, i + 2);
+            IntVector holeHeight = left.min(right).sub(mid);
+            VectorMask<Integer> holes = SPECIES.indexInRange(i, width).and(holeHeight.compare(VectorOperators.GT, 2));
+            r += holeHeight.add(1).lanewise(VectorOperators.ASHR, 2).reduceLanes(VectorOperators.ADD, holes);
+        }
+        return r;
+    }
+
+    @Override
+    public int monotonicRate(int[] heights, int width) {
+        int half = width / 2;
+        int r = 0;
+        for (int i = 0; i < width - 1; i += SPECIES.length()) {
+            IntVector h1 = IntVector.fromArray(SPECIES, heights, i + 1);
+            IntVector h2 = IntVector.fromArray(SPECIES, heights, i + 2);
+            IntVector d = h2.sub(h1);
+            r += d.max(0).reduceLanes(VectorOperators.ADD, SPECIES.indexInRange(i, half - 1));
+            r += d.neg().max(0).reduceLanes(VectorOperators.ADD, SPECIES.indexInRange(i - half, width - 1 - half));
+        }
+        return r;
+    }
+}